@@ -0,0 +1,213 @@
+package me.a7madev.androidglobalutils;
+
+import android.content.ContentProvider;
+import android.content.ContentResolver;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.net.Uri;
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.support.test.runner.AndroidJUnit4;
+import android.test.mock.MockContentResolver;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MediaGallery against a stand-in provider: an in memory SQLite table with the MediaStore columns
+ */
+@RunWith(AndroidJUnit4.class)
+public class MediaGalleryTest {
+
+    private static final String AUTHORITY = "me.a7madev.androidglobalutils.test.media";
+    private static final Uri COLLECTION_URI = Uri.parse("content://" + AUTHORITY + "/files");
+    private static final int ROWS_COUNT = 1000;
+
+    /**
+     * Stand-in for MediaStore, honoring the limit in the sort order and in the query arguments
+     */
+    public static class StandInMediaProvider extends ContentProvider {
+
+        private static final String TABLE = "files";
+
+        private SQLiteDatabase database;
+        int queriesCount;
+        int maxRowsReturned;
+
+        @Override
+        public boolean onCreate() {
+            database = SQLiteDatabase.create(null);
+            database.execSQL("CREATE TABLE " + TABLE + " (" + BaseColumns._ID + " INTEGER PRIMARY KEY, "
+                    + MediaStore.MediaColumns.DATA + " TEXT, " + MediaStore.MediaColumns.MIME_TYPE + " TEXT, "
+                    + MediaStore.MediaColumns.SIZE + " INTEGER, " + MediaStore.MediaColumns.DATE_MODIFIED + " INTEGER, "
+                    + MediaStore.Files.FileColumns.MEDIA_TYPE + " INTEGER)");
+            return true;
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, String selection, String[] selectionArgs, String sortOrder) {
+            return count(database.query(TABLE, projection, selection, selectionArgs, null, null, sortOrder));
+        }
+
+        @Override
+        public Cursor query(Uri uri, String[] projection, Bundle queryArgs, CancellationSignal cancellationSignal) {
+            return count(database.query(TABLE, projection, queryArgs.getString(ContentResolver.QUERY_ARG_SQL_SELECTION),
+                    queryArgs.getStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS), null, null,
+                    queryArgs.getString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER), queryArgs.getString("android:query-arg-sql-limit")));
+        }
+
+        @Override
+        public String getType(Uri uri) {
+            return null;
+        }
+
+        @Override
+        public Uri insert(Uri uri, ContentValues values) {
+            return Uri.withAppendedPath(uri, String.valueOf(database.insert(TABLE, null, values)));
+        }
+
+        @Override
+        public int delete(Uri uri, String selection, String[] selectionArgs) {
+            return database.delete(TABLE, selection, selectionArgs);
+        }
+
+        @Override
+        public int update(Uri uri, ContentValues values, String selection, String[] selectionArgs) {
+            return database.update(TABLE, values, selection, selectionArgs);
+        }
+
+        private Cursor count(Cursor cursor) {
+            queriesCount++;
+            maxRowsReturned = Math.max(maxRowsReturned, cursor.getCount());
+            return cursor;
+        }
+    }
+
+    private StandInMediaProvider provider;
+    private MockContentResolver contentResolver;
+    // expected order: newest first, then the rows without a date by id
+    private final List<Long> expectedIds = new ArrayList<>();
+    private final List<Long> expectedImageIds = new ArrayList<>();
+
+    @Before
+    public void setUp() {
+        provider = new StandInMediaProvider();
+        provider.onCreate();
+        contentResolver = new MockContentResolver();
+        contentResolver.addProvider(AUTHORITY, provider);
+
+        // few distinct dates, so many rows share one and the id decides
+        Random random = new Random(42);
+        final List<long[]> rows = new ArrayList<>();
+        for (int i = 1; i <= ROWS_COUNT; i++) {
+            ContentValues values = new ContentValues();
+            values.put(BaseColumns._ID, i);
+            values.put(MediaStore.MediaColumns.DATA, "/sdcard/DCIM/" + i + ".jpg");
+            values.put(MediaStore.MediaColumns.SIZE, i * 10);
+            boolean image = random.nextBoolean();
+            values.put(MediaStore.MediaColumns.MIME_TYPE, image ? "image/jpeg" : "video/mp4");
+            values.put(MediaStore.Files.FileColumns.MEDIA_TYPE, image ? MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE
+                    : MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
+            long dateModified = random.nextInt(20) == 0 ? -1 : 1500000000L + random.nextInt(50);
+            if (dateModified < 0) {
+                values.putNull(MediaStore.MediaColumns.DATE_MODIFIED);
+            } else {
+                values.put(MediaStore.MediaColumns.DATE_MODIFIED, dateModified);
+            }
+            contentResolver.insert(COLLECTION_URI, values);
+            rows.add(new long[]{i, dateModified, image ? 1 : 0});
+        }
+        Collections.sort(rows, new Comparator<long[]>() {
+            @Override
+            public int compare(long[] a, long[] b) {
+                boolean aUndated = a[1] < 0;
+                boolean bUndated = b[1] < 0;
+                if (aUndated != bUndated) {
+                    return aUndated ? 1 : -1;
+                }
+                if (a[1] != b[1]) {
+                    return a[1] > b[1] ? -1 : 1;
+                }
+                return a[0] > b[0] ? -1 : a[0] == b[0] ? 0 : 1;
+            }
+        });
+        for (long[] row : rows) {
+            expectedIds.add(row[0]);
+            if (row[2] == 1) {
+                expectedImageIds.add(row[0]);
+            }
+        }
+    }
+
+    @Test
+    public void pagesAllRowsInOrderWithoutDuplicates() {
+        int pageSize = 37;
+        MediaGallery gallery = new MediaGallery(contentResolver, COLLECTION_URI).setPageSize(pageSize);
+        List<Long> ids = loadAll(gallery, pageSize);
+        assertEquals(expectedIds, ids);
+        assertEquals(ids.size(), new HashSet<>(ids).size());
+        assertTrue("page query without limit", provider.maxRowsReturned <= pageSize);
+    }
+
+    @Test
+    public void combinesSelectionWithKeyset() {
+        int pageSize = 50;
+        MediaGallery gallery = new MediaGallery(contentResolver, COLLECTION_URI).setPageSize(pageSize)
+                .setSelection(MediaStore.Files.FileColumns.MEDIA_TYPE + " = ?",
+                        new String[]{String.valueOf(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE)});
+        assertEquals(expectedImageIds, loadAll(gallery, pageSize));
+    }
+
+    @Test
+    public void resetStartsFromNewest() {
+        MediaGallery gallery = new MediaGallery(contentResolver, COLLECTION_URI).setPageSize(10);
+        List<MediaGallery.MediaItem> firstPage = gallery.loadNextPage();
+        gallery.loadNextPage();
+        gallery.reset();
+        List<MediaGallery.MediaItem> page = gallery.loadNextPage();
+        assertEquals(firstPage.get(0).id, page.get(0).id);
+        assertEquals(Uri.withAppendedPath(COLLECTION_URI, String.valueOf(page.get(0).id)), page.get(0).getUri());
+    }
+
+    @Test
+    public void emptyCollectionHasNoPages() {
+        contentResolver.delete(COLLECTION_URI, null, null);
+        MediaGallery gallery = new MediaGallery(contentResolver, COLLECTION_URI);
+        assertTrue(gallery.loadNextPage().isEmpty());
+        assertFalse(gallery.hasMore());
+    }
+
+    private static List<Long> loadAll(MediaGallery gallery, int pageSize) {
+        List<Long> ids = new ArrayList<>();
+        Set<Integer> pageSizes = new HashSet<>();
+        while (gallery.hasMore()) {
+            List<MediaGallery.MediaItem> page = gallery.loadNextPage();
+            assertTrue(page.size() <= pageSize);
+            if (gallery.hasMore()) {
+                pageSizes.add(page.size());
+            }
+            for (MediaGallery.MediaItem item : page) {
+                ids.add(item.id);
+            }
+        }
+        // every page but the last one is full, also across the undated rows
+        assertTrue(pageSizes.isEmpty() || (pageSizes.size() == 1 && pageSizes.contains(pageSize)));
+        return ids;
+    }
+}
@@ -0,0 +1,204 @@
+package me.a7madev.androidglobalutils;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Deletes files and whole directory trees on a worker pool.
+ * Every directory is listed as its own task and is deleted after all of its children,
+ * so trees are removed bottom up in parallel. Symbolic links are deleted, never followed.
+ */
+public class BatchDeleter {
+
+    public static final String TAG = BatchDeleter.class.getSimpleName();
+
+    /**
+     * Batch delete result
+     */
+    public static class Result {
+
+        public final int deletedCount;
+        public final long bytesFreed;
+        public final List<File> failures;
+
+        private Result(int deletedCount, long bytesFreed, List<File> failures) {
+            this.deletedCount = deletedCount;
+            this.bytesFreed = bytesFreed;
+            this.failures = failures;
+        }
+
+        public boolean isSuccessful() {
+            return failures.isEmpty();
+        }
+    }
+
+    /**
+     * Background delete callback, invoked on the main thread
+     */
+    public interface Listener {
+        void onDeleteFinished(Result result);
+    }
+
+    private final int parallelism;
+    private final int threadPriority;
+
+    /**
+     * Batch Deleter
+     * @param parallelism Number of worker threads
+     * @param lowPriority Run the workers at the lowest thread priority
+     */
+    public BatchDeleter(int parallelism, boolean lowPriority) {
+        this.parallelism = Math.max(1, parallelism);
+        this.threadPriority = lowPriority ? Process.THREAD_PRIORITY_LOWEST : Process.THREAD_PRIORITY_BACKGROUND;
+    }
+
+    /**
+     * Delete files and directory trees, waiting for the result
+     * @param files Files or directories
+     * @return Result
+     */
+    public Result delete(Collection<File> files) {
+        return new DeleteJob(files).run();
+    }
+
+    /**
+     * Delete files and directory trees in the background
+     * @param files Files or directories
+     * @param listener Listener or null
+     */
+    public void deleteInBackground(Collection<File> files, final Listener listener) {
+        final DeleteJob job = new DeleteJob(files);
+        new WorkerThreadFactory(TAG, threadPriority).newThread(new Runnable() {
+            @Override
+            public void run() {
+                final Result result = job.run();
+                if (listener != null) {
+                    new Handler(Looper.getMainLooper()).post(new Runnable() {
+                        @Override
+                        public void run() {
+                            listener.onDeleteFinished(result);
+                        }
+                    });
+                }
+            }
+        }).start();
+    }
+
+    private class DeleteJob {
+
+        private final List<File> files;
+        private final AtomicInteger deletedCount = new AtomicInteger();
+        private final AtomicLong bytesFreed = new AtomicLong();
+        private final ConcurrentLinkedQueue<File> failures = new ConcurrentLinkedQueue<>();
+        private CountDownLatch finished;
+        private ExecutorService executor;
+
+        private DeleteJob(Collection<File> files) {
+            this.files = files != null ? new ArrayList<>(files) : Collections.<File>emptyList();
+        }
+
+        private Result run() {
+            finished = new CountDownLatch(files.size());
+            executor = Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory(TAG, threadPriority));
+            try {
+                for (File file : files) {
+                    if (file != null && file.isDirectory() && !GlobalFileUtils.isSymbolicLink(file)) {
+                        submit(new DirectoryTask(file, null));
+                    } else {
+                        deleteEntry(file);
+                        finished.countDown();
+                    }
+                }
+                finished.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } finally {
+                executor.shutdown();
+            }
+            return new Result(deletedCount.get(), bytesFreed.get(), new ArrayList<>(failures));
+        }
+
+        private void submit(DirectoryTask task) {
+            try {
+                executor.execute(task);
+            } catch (RejectedExecutionException e) {
+                logThis(TAG, "submit RejectedExecutionException", e);
+                task.run();
+            }
+        }
+
+        private void deleteEntry(File file) {
+            if (file == null || !file.exists()) {
+                return;
+            }
+            long length = file.isFile() ? file.length() : 0;
+            if (GlobalFileUtils.deleteFile(file)) {
+                deletedCount.incrementAndGet();
+                bytesFreed.addAndGet(length);
+            } else {
+                failures.add(file);
+            }
+        }
+
+        private class DirectoryTask implements Runnable {
+
+            private final File directory;
+            private final DirectoryTask parent;
+            // sub directories still being deleted, plus one for listing this directory
+            private final AtomicInteger pendingChildren = new AtomicInteger(1);
+
+            private DirectoryTask(File directory, DirectoryTask parent) {
+                this.directory = directory;
+                this.parent = parent;
+            }
+
+            @Override
+            public void run() {
+                try {
+                    File listFile[] = directory.listFiles();
+                    if (listFile != null) {
+                        for (File aListFile : listFile) {
+                            if (aListFile.isDirectory() && !GlobalFileUtils.isSymbolicLink(aListFile)) {
+                                pendingChildren.incrementAndGet();
+                                submit(new DirectoryTask(aListFile, this));
+                            } else {
+                                deleteEntry(aListFile);
+                            }
+                        }
+                    }
+                } catch (Exception e) {
+                    logThis(TAG, "DirectoryTask Exception", e);
+                } finally {
+                    onChildDeleted();
+                }
+            }
+
+            private void onChildDeleted() {
+                if (pendingChildren.decrementAndGet() == 0) {
+                    deleteEntry(directory);
+                    if (parent != null) {
+                        parent.onChildDeleted();
+                    } else {
+                        finished.countDown();
+                    }
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package me.a7madev.androidglobalutils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Matrix;
+import android.graphics.Rect;
+import android.os.Build;
+
+import java.io.File;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Decodes images at the size they are displayed at.
+ * The EXIF orientation is read before decoding, so the sample size is computed against the
+ * displayed (rotated) size, and the image is decoded directly at a power of two sample size.
+ * JPEG headers are read with ExifReader, which also gives the frame header size, so the bounds decode is skipped.
+ * Decodes go into a reusable bitmap taken from the BitmapPool when one fits. Orientation is applied
+ * with a single extra allocation, or none when the image is already upright.
+ */
+public class BitmapDecoder {
+
+    public static final String TAG = BitmapDecoder.class.getSimpleName();
+
+    private interface Source {
+        Bitmap decode(BitmapFactory.Options options);
+    }
+
+    /**
+     * Decode an image, upright, with both sides at least as large as requested
+     * @param path Image path
+     * @param reqWidth Requested width (0 to ignore)
+     * @param reqHeight Requested height (0 to ignore)
+     * @return Bitmap or null
+     */
+    public static Bitmap decodeSampledImage(String path, int reqWidth, int reqHeight) {
+        return decodeSampledImage(path, reqWidth, reqHeight, null);
+    }
+
+    /**
+     * Decode an image, upright, with both sides at least as large as requested
+     * @param path Image path
+     * @param reqWidth Requested width (0 to ignore)
+     * @param reqHeight Requested height (0 to ignore)
+     * @param reusableBitmap Mutable bitmap to decode into when it is large enough, or null to use the BitmapPool
+     * @return Bitmap or null
+     */
+    public static Bitmap decodeSampledImage(String path, int reqWidth, int reqHeight, Bitmap reusableBitmap) {
+        if (path == null || path.isEmpty()) {
+            return null;
+        }
+        ExifReader.Metadata metadata = new ExifReader.Metadata();
+        ExifReader.read(new File(path), metadata);
+        int orientation = metadata.orientation != ExifReader.ORIENTATION_UNDEFINED ? metadata.orientation : ExifReader.ORIENTATION_NORMAL;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (metadata.width > 0 && metadata.height > 0) {
+            // the JPEG frame header has the size BitmapFactory would report
+            options.outWidth = metadata.width;
+            options.outHeight = metadata.height;
+        } else {
+            options.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(path, options);
+            if (options.outWidth <= 0 || options.outHeight <= 0) {
+                return null;
+            }
+        }
+        // a quarter turn swaps the sides: the requested width applies to the decoded height
+        if (isSwappingSides(orientation)) {
+            options.inSampleSize = GlobalUtils.calculateInSampleSize(options.outWidth, options.outHeight, reqHeight, reqWidth);
+        } else {
+            options.inSampleSize = GlobalUtils.calculateInSampleSize(options.outWidth, options.outHeight, reqWidth, reqHeight);
+        }
+        options.inJustDecodeBounds = false;
+        if (canUseForInBitmap(reusableBitmap, options)) {
+            options.inBitmap = reusableBitmap;
+        }
+
+        Bitmap bitmap = decodeFile(path, options);
+        if (bitmap == null) {
+            return null;
+        }
+        Bitmap orientedBitmap = applyOrientation(bitmap, orientation);
+        if (orientedBitmap != bitmap && bitmap != reusableBitmap) {
+            BitmapPool.getInstance().put(bitmap);
+        }
+        return orientedBitmap;
+    }
+
+    /**
+     * Read the EXIF orientation of an image
+     * @param path Image path
+     * @return int ExifReader orientation, ORIENTATION_NORMAL when missing
+     */
+    public static int getExifOrientation(String path) {
+        return ExifReader.readOrientation(path);
+    }
+
+    /**
+     * Does an orientation turn the image by a quarter (width and height are swapped)
+     * @param orientation ExifReader orientation
+     * @return boolean
+     */
+    public static boolean isSwappingSides(int orientation) {
+        return orientation == ExifReader.ORIENTATION_ROTATE_90 || orientation == ExifReader.ORIENTATION_ROTATE_270
+                || orientation == ExifReader.ORIENTATION_TRANSPOSE || orientation == ExifReader.ORIENTATION_TRANSVERSE;
+    }
+
+    /**
+     * Rotate or flip a bitmap to its EXIF orientation
+     * @param bitmap Bitmap as decoded
+     * @param orientation ExifReader orientation
+     * @return Bitmap the same bitmap when it is upright, otherwise a new one (the source is not recycled)
+     */
+    public static Bitmap applyOrientation(Bitmap bitmap, int orientation) {
+        Matrix matrix = new Matrix();
+        switch (orientation) {
+            case ExifReader.ORIENTATION_FLIP_HORIZONTAL:
+                matrix.setScale(-1, 1);
+                break;
+            case ExifReader.ORIENTATION_ROTATE_180:
+                matrix.setRotate(180);
+                break;
+            case ExifReader.ORIENTATION_FLIP_VERTICAL:
+                matrix.setScale(1, -1);
+                break;
+            case ExifReader.ORIENTATION_TRANSPOSE:
+                matrix.setRotate(90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifReader.ORIENTATION_ROTATE_90:
+                matrix.setRotate(90);
+                break;
+            case ExifReader.ORIENTATION_TRANSVERSE:
+                matrix.setRotate(-90);
+                matrix.postScale(-1, 1);
+                break;
+            case ExifReader.ORIENTATION_ROTATE_270:
+                matrix.setRotate(-90);
+                break;
+            default:
+                return bitmap;
+        }
+        try {
+            return Bitmap.createBitmap(bitmap, 0, 0, bitmap.getWidth(), bitmap.getHeight(), matrix, true);
+        } catch (OutOfMemoryError e) {
+            logThis(TAG, "applyOrientation OutOfMemoryError", e);
+            return bitmap;
+        }
+    }
+
+    /**
+     * Can a bitmap be used as inBitmap for a decode. Before KitKat the sizes must be equal and
+     * the image not sampled, since KitKat any bitmap with a large enough allocation can be used.
+     * @param bitmap Candidate bitmap or null
+     * @param options Decode options, with outWidth, outHeight and inSampleSize set
+     * @return boolean
+     */
+    public static boolean canUseForInBitmap(Bitmap bitmap, BitmapFactory.Options options) {
+        if (bitmap == null || bitmap.isRecycled() || !bitmap.isMutable()) {
+            return false;
+        }
+        int sampleSize = Math.max(1, options.inSampleSize);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
+            int width = (options.outWidth + sampleSize - 1) / sampleSize;
+            int height = (options.outHeight + sampleSize - 1) / sampleSize;
+            Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig : bitmap.getConfig();
+            return (long) width * height * getBytesPerPixel(config) <= bitmap.getAllocationByteCount();
+        }
+        return sampleSize == 1 && bitmap.getWidth() == options.outWidth && bitmap.getHeight() == options.outHeight
+                && (options.inPreferredConfig == null || options.inPreferredConfig == bitmap.getConfig());
+    }
+
+    /**
+     * Bytes per pixel of a bitmap config
+     * @param config Bitmap.Config or null
+     * @return int
+     */
+    public static int getBytesPerPixel(Bitmap.Config config) {
+        if (config == Bitmap.Config.ALPHA_8) {
+            return 1;
+        }
+        if (config == Bitmap.Config.RGB_565 || config == Bitmap.Config.ARGB_4444) {
+            return 2;
+        }
+        return 4;
+    }
+
+    /**
+     * Decode an image at full size into a pooled bitmap
+     * @param path Image path
+     * @return Bitmap or null
+     */
+    public static Bitmap decodeFile(String path) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        return decodeFile(path, options);
+    }
+
+    // decode options with bounds and sample size set, inBitmap is taken from the pool when not set
+    static Bitmap decodeFile(final String path, BitmapFactory.Options options) {
+        return decode(new Source() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return BitmapFactory.decodeFile(path, options);
+            }
+        }, options, false);
+    }
+
+    // decode a part of an image with the sample size set, into a pooled bitmap of the exact region size
+    static Bitmap decodeRegion(final BitmapRegionDecoder decoder, final Rect rect, BitmapFactory.Options options) {
+        options.outWidth = rect.width();
+        options.outHeight = rect.height();
+        return decode(new Source() {
+            @Override
+            public Bitmap decode(BitmapFactory.Options options) {
+                return decoder.decodeRegion(rect, options);
+            }
+        }, options, true);
+    }
+
+    // decode into a mutable bitmap so it can go back to the pool,
+    // without inBitmap if the platform refuses the reusable bitmap
+    private static Bitmap decode(Source source, BitmapFactory.Options options, boolean regionDecode) {
+        Bitmap pooledBitmap = null;
+        if (options.inBitmap == null) {
+            BitmapPool bitmapPool = BitmapPool.getInstance();
+            pooledBitmap = regionDecode ? bitmapPool.getForRegionDecode(options) : bitmapPool.getForDecode(options);
+            options.inBitmap = pooledBitmap;
+        }
+        options.inMutable = true;
+        Bitmap bitmap;
+        try {
+            bitmap = source.decode(options);
+        } catch (IllegalArgumentException e) {
+            if (options.inBitmap == null) {
+                throw e;
+            }
+            logThis(TAG, "decode: inBitmap refused", e);
+            options.inBitmap = null;
+            bitmap = source.decode(options);
+        }
+        if (pooledBitmap != null && bitmap != pooledBitmap) {
+            BitmapPool.getInstance().put(pooledBitmap);
+        }
+        return bitmap;
+    }
+}
@@ -0,0 +1,298 @@
+package me.a7madev.androidglobalutils;
+
+import android.content.ComponentCallbacks2;
+import android.content.Context;
+import android.content.res.Configuration;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Pool of mutable bitmaps, reused by the library decoders through BitmapFactory.Options.inBitmap.
+ * Since KitKat bitmaps are bucketed by allocation size and any large enough bitmap is reused,
+ * before KitKat they are bucketed by exact width, height and config as the platform requires.
+ * The pool is bounded by a byte budget, drops the oldest bitmaps first and shrinks on memory pressure.
+ * Give back bitmaps that are no longer displayed with put().
+ */
+public class BitmapPool implements ComponentCallbacks2 {
+
+    public static final String TAG = BitmapPool.class.getSimpleName();
+
+    // a pooled bitmap is not used for a request needing less than 1/8 of its allocation
+    private static final int MAX_SIZE_MULTIPLE = 8;
+
+    private static BitmapPool instance;
+
+    private final boolean sizeReuse = Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT;
+    private final TreeMap<Long, ArrayDeque<Bitmap>> buckets = new TreeMap<>();
+    // pooled bitmaps, oldest first
+    private final LinkedHashSet<Bitmap> pooledBitmaps = new LinkedHashSet<>();
+    private long maxBytes;
+    private long currentBytes;
+    private int hitCount;
+    private int missCount;
+    private int evictionCount;
+    private long bytesReused;
+    private boolean callbacksRegistered;
+
+    /**
+     * Bitmap Pool
+     * @param maxBytes Maximum bytes of pooled bitmaps
+     */
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+    }
+
+    /**
+     * Get the shared pool, using 1/16 of the heap
+     * @return BitmapPool
+     */
+    public static synchronized BitmapPool getInstance() {
+        if (instance == null) {
+            instance = new BitmapPool(Runtime.getRuntime().maxMemory() / 16);
+        }
+        return instance;
+    }
+
+    /**
+     * Get the shared pool and trim it when the system is low on memory
+     * @param context  The context to use. Use application or activity context
+     * @return BitmapPool
+     */
+    public static synchronized BitmapPool getInstance(Context context) {
+        BitmapPool bitmapPool = getInstance();
+        if (!bitmapPool.callbacksRegistered) {
+            context.getApplicationContext().registerComponentCallbacks(bitmapPool);
+            bitmapPool.callbacksRegistered = true;
+        }
+        return bitmapPool;
+    }
+
+    /**
+     * Give back a bitmap that is not used anymore. Bitmaps that can not be reused are recycled.
+     * @param bitmap Bitmap
+     * @return boolean pooled?
+     */
+    public synchronized boolean put(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) {
+            return false;
+        }
+        if (pooledBitmaps.contains(bitmap)) {
+            return true;
+        }
+        long size = getAllocationSize(bitmap);
+        if (!bitmap.isMutable() || size > maxBytes || bitmap.getConfig() == null) {
+            bitmap.recycle();
+            return false;
+        }
+        Long key = sizeReuse ? size : getExactKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        ArrayDeque<Bitmap> bucket = buckets.get(key);
+        if (bucket == null) {
+            bucket = new ArrayDeque<>();
+            buckets.put(key, bucket);
+        }
+        bucket.push(bitmap);
+        pooledBitmaps.add(bitmap);
+        currentBytes += size;
+        trimToSize(maxBytes);
+        return true;
+    }
+
+    /**
+     * Get a bitmap of the exact size and config, cleared, from the pool or newly allocated
+     * @param width Width
+     * @param height Height
+     * @param config Bitmap.Config
+     * @return Bitmap, mutable
+     */
+    public Bitmap get(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = getDirty(width, height, config);
+        if (bitmap == null) {
+            return Bitmap.createBitmap(width, height, config);
+        }
+        if (sizeReuse && (bitmap.getWidth() != width || bitmap.getHeight() != height || bitmap.getConfig() != config)) {
+            bitmap.reconfigure(width, height, config);
+        }
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    /**
+     * Get a pooled bitmap that can hold an image, without clearing it
+     * @param width Width
+     * @param height Height
+     * @param config Bitmap.Config
+     * @return Bitmap or null when none fits
+     */
+    public synchronized Bitmap getDirty(int width, int height, Bitmap.Config config) {
+        Bitmap bitmap = null;
+        if (sizeReuse) {
+            long size = (long) width * height * BitmapDecoder.getBytesPerPixel(config);
+            Map.Entry<Long, ArrayDeque<Bitmap>> entry = buckets.ceilingEntry(size);
+            if (entry != null && entry.getKey() <= size * MAX_SIZE_MULTIPLE) {
+                bitmap = take(entry.getKey(), entry.getValue());
+            }
+        } else {
+            Long key = getExactKey(width, height, config);
+            ArrayDeque<Bitmap> bucket = buckets.get(key);
+            if (bucket != null) {
+                bitmap = take(key, bucket);
+            }
+        }
+        if (bitmap == null) {
+            missCount++;
+        } else {
+            hitCount++;
+            bytesReused += getAllocationSize(bitmap);
+        }
+        return bitmap;
+    }
+
+    /**
+     * Get a pooled bitmap to decode into
+     * @param options Decode options, with outWidth, outHeight and inSampleSize set
+     * @return Bitmap or null when none fits
+     */
+    public Bitmap getForDecode(BitmapFactory.Options options) {
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sampleSize = Math.max(1, options.inSampleSize);
+        if (!sizeReuse && sampleSize != 1) {
+            // before KitKat a sampled decode can not reuse a bitmap
+            return null;
+        }
+        Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        return getDirty((options.outWidth + sampleSize - 1) / sampleSize, (options.outHeight + sampleSize - 1) / sampleSize, config);
+    }
+
+    /**
+     * Get a pooled bitmap for a region decode. BitmapRegionDecoder draws into inBitmap without
+     * resizing it, so the bitmap is set to the exact decoded size and config, and cleared.
+     * @param options Decode options, with outWidth, outHeight and inSampleSize set
+     * @return Bitmap or null when none fits
+     */
+    public Bitmap getForRegionDecode(BitmapFactory.Options options) {
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        int sampleSize = Math.max(1, options.inSampleSize);
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        Bitmap.Config config = options.inPreferredConfig != null ? options.inPreferredConfig : Bitmap.Config.ARGB_8888;
+        Bitmap bitmap = getDirty(width, height, config);
+        if (bitmap == null) {
+            return null;
+        }
+        if (bitmap.getWidth() != width || bitmap.getHeight() != height || bitmap.getConfig() != config) {
+            // only since KitKat, before the bucket is already exact
+            bitmap.reconfigure(width, height, config);
+        }
+        bitmap.eraseColor(0);
+        return bitmap;
+    }
+
+    /**
+     * Change the byte budget, dropping bitmaps if needed
+     * @param maxBytes Maximum bytes of pooled bitmaps
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = Math.max(0, maxBytes);
+        trimToSize(this.maxBytes);
+    }
+
+    /**
+     * Recycle all pooled bitmaps
+     */
+    public synchronized void clear() {
+        trimToSize(0);
+    }
+
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized long getCurrentBytes() {
+        return currentBytes;
+    }
+
+    public synchronized int hitCount() {
+        return hitCount;
+    }
+
+    public synchronized int missCount() {
+        return missCount;
+    }
+
+    public synchronized int evictionCount() {
+        return evictionCount;
+    }
+
+    public synchronized long bytesReused() {
+        return bytesReused;
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            clear();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            synchronized (this) {
+                trimToSize(maxBytes / 2);
+            }
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        clear();
+    }
+
+    @Override
+    public void onConfigurationChanged(Configuration newConfig) {
+        // pooled bitmaps do not depend on the configuration
+    }
+
+    private Bitmap take(Long key, ArrayDeque<Bitmap> bucket) {
+        Bitmap bitmap = bucket.pop();
+        if (bucket.isEmpty()) {
+            buckets.remove(key);
+        }
+        pooledBitmaps.remove(bitmap);
+        currentBytes -= getAllocationSize(bitmap);
+        return bitmap;
+    }
+
+    private void trimToSize(long size) {
+        Iterator<Bitmap> iterator = pooledBitmaps.iterator();
+        while (currentBytes > size && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            Long key = sizeReuse ? getAllocationSize(bitmap) : getExactKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+            ArrayDeque<Bitmap> bucket = buckets.get(key);
+            if (bucket != null) {
+                bucket.remove(bitmap);
+                if (bucket.isEmpty()) {
+                    buckets.remove(key);
+                }
+            }
+            currentBytes -= getAllocationSize(bitmap);
+            evictionCount++;
+            bitmap.recycle();
+        }
+    }
+
+    private static long getExactKey(int width, int height, Bitmap.Config config) {
+        return ((long) width << 32) | ((long) (height & 0xFFFFFF) << 8) | config.ordinal();
+    }
+
+    private long getAllocationSize(Bitmap bitmap) {
+        return sizeReuse ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+    }
+}
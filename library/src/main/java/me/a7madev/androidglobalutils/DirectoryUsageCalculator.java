@@ -0,0 +1,314 @@
+package me.a7madev.androidglobalutils;
+
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Computes the space used by a directory tree, split into images, videos and other files
+ * using the GlobalFileUtils image and video extensions.
+ * Every directory is listed as its own task of a DirectoryWalker. The totals of the files directly
+ * inside a directory are cached with the directory modification time, so an unchanged directory
+ * costs one stat call on the next run instead of one per file. Files rewritten in place do not
+ * change their directory time: call clearCache() to recount them.
+ */
+public class DirectoryUsageCalculator {
+
+    public static final String TAG = DirectoryUsageCalculator.class.getSimpleName();
+
+    public static final int CATEGORY_IMAGE = 0;
+    public static final int CATEGORY_VIDEO = 1;
+    public static final int CATEGORY_OTHER = 2;
+    private static final int CATEGORIES_COUNT = 3;
+
+    public static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 200;
+
+    /**
+     * Directory usage, by category
+     */
+    public static class Usage {
+
+        private final long[] bytes;
+        private final int[] filesCount;
+        public final int directoriesCount;
+        public final boolean finished;
+
+        private Usage(long[] bytes, int[] filesCount, int directoriesCount, boolean finished) {
+            this.bytes = bytes;
+            this.filesCount = filesCount;
+            this.directoriesCount = directoriesCount;
+            this.finished = finished;
+        }
+
+        /**
+         * Size of a category
+         * @param category CATEGORY_IMAGE, CATEGORY_VIDEO or CATEGORY_OTHER
+         * @return long bytes
+         */
+        public long getBytes(int category) {
+            return bytes[category];
+        }
+
+        /**
+         * Files count of a category
+         * @param category CATEGORY_IMAGE, CATEGORY_VIDEO or CATEGORY_OTHER
+         * @return int
+         */
+        public int getFilesCount(int category) {
+            return filesCount[category];
+        }
+
+        public long getTotalBytes() {
+            long totalBytes = 0;
+            for (long categoryBytes : bytes) {
+                totalBytes += categoryBytes;
+            }
+            return totalBytes;
+        }
+
+        public int getTotalFilesCount() {
+            int totalFilesCount = 0;
+            for (int categoryFilesCount : filesCount) {
+                totalFilesCount += categoryFilesCount;
+            }
+            return totalFilesCount;
+        }
+    }
+
+    /**
+     * Usage callbacks
+     */
+    public interface Listener {
+
+        /**
+         * Partial totals, the tree is still being counted
+         * @param usage Usage so far
+         */
+        void onProgress(Usage usage);
+
+        /**
+         * Final totals
+         * @param usage Usage
+         */
+        void onFinished(Usage usage);
+    }
+
+    // files directly inside a directory
+    private static class DirectoryTotals {
+
+        private final long lastModified;
+        private final long[] bytes = new long[CATEGORIES_COUNT];
+        private final int[] filesCount = new int[CATEGORIES_COUNT];
+        private final List<File> subDirectories = new ArrayList<>();
+
+        private DirectoryTotals(long lastModified) {
+            this.lastModified = lastModified;
+        }
+    }
+
+    private final int parallelism;
+    private final ConcurrentHashMap<String, DirectoryTotals> cache = new ConcurrentHashMap<>();
+    private final ExtensionMatcher imageMatcher = ExtensionMatcher.forExtensions(GlobalFileUtils.IMAGE_FILE_EXTENSIONS);
+    private final ExtensionMatcher videoMatcher = ExtensionMatcher.forExtensions(GlobalFileUtils.VIDEO_FILE_EXTENSIONS);
+    private long progressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MILLIS;
+
+    /**
+     * Directory Usage Calculator
+     * @param parallelism Number of worker threads
+     */
+    public DirectoryUsageCalculator(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Set minimum time between two progress callbacks
+     * @param progressIntervalMillis long milliseconds
+     * @return DirectoryUsageCalculator
+     */
+    public DirectoryUsageCalculator setProgressInterval(long progressIntervalMillis) {
+        this.progressIntervalMillis = Math.max(0, progressIntervalMillis);
+        return this;
+    }
+
+    /**
+     * Calculate the usage of a directory tree, waiting for the result
+     * @param rootDir Directory
+     * @param listener Listener or null, invoked on the worker threads
+     * @return Usage
+     */
+    public Usage calculate(File rootDir, Listener listener) {
+        Usage usage = new UsageJob(listener).run(rootDir);
+        if (listener != null) {
+            listener.onFinished(usage);
+        }
+        return usage;
+    }
+
+    /**
+     * Calculate the usage of a directory tree in the background
+     * @param rootDir Directory
+     * @param listener Listener, invoked on the main thread
+     */
+    public void calculateInBackground(final File rootDir, final Listener listener) {
+        final Handler handler = new Handler(Looper.getMainLooper());
+        // set on the main thread, drops progress posted after the final totals
+        final boolean[] delivered = new boolean[1];
+        new WorkerThreadFactory(TAG).newThread(new Runnable() {
+            @Override
+            public void run() {
+                calculate(rootDir, new Listener() {
+                    @Override
+                    public void onProgress(final Usage usage) {
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if (!delivered[0]) {
+                                    listener.onProgress(usage);
+                                }
+                            }
+                        });
+                    }
+
+                    @Override
+                    public void onFinished(final Usage usage) {
+                        handler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                delivered[0] = true;
+                                listener.onFinished(usage);
+                            }
+                        });
+                    }
+                });
+            }
+        }).start();
+    }
+
+    /**
+     * Forget the cached directory totals
+     */
+    public void clearCache() {
+        cache.clear();
+    }
+
+    /**
+     * Cached directories count
+     * @return int
+     */
+    public int getCacheSize() {
+        return cache.size();
+    }
+
+    private DirectoryTotals getDirectoryTotals(File directory) {
+        long lastModified = directory.lastModified();
+        String path = directory.getPath();
+        DirectoryTotals totals = cache.get(path);
+        if (totals != null && totals.lastModified == lastModified && lastModified != 0) {
+            return totals;
+        }
+        totals = new DirectoryTotals(lastModified);
+        File listFile[] = directory.listFiles();
+        if (listFile != null) {
+            for (File aListFile : listFile) {
+                if (aListFile.isDirectory()) {
+                    // links are not followed, a link cycle would be walked forever
+                    if (!GlobalFileUtils.isSymbolicLink(aListFile)) {
+                        totals.subDirectories.add(aListFile);
+                    }
+                } else {
+                    int category = imageMatcher.matches(aListFile) ? CATEGORY_IMAGE
+                            : videoMatcher.matches(aListFile) ? CATEGORY_VIDEO : CATEGORY_OTHER;
+                    totals.bytes[category] += aListFile.length();
+                    totals.filesCount[category]++;
+                }
+            }
+        }
+        cache.put(path, totals);
+        return totals;
+    }
+
+    private class UsageJob implements DirectoryWalker.DirectoryVisitor {
+
+        private final Listener listener;
+        private final AtomicLongArray bytes = new AtomicLongArray(CATEGORIES_COUNT);
+        private final AtomicLongArray filesCount = new AtomicLongArray(CATEGORIES_COUNT);
+        private final AtomicInteger directoriesCount = new AtomicInteger();
+        private final AtomicLong lastProgressTime = new AtomicLong();
+
+        private UsageJob(Listener listener) {
+            this.listener = listener;
+        }
+
+        private Usage run(File rootDir) {
+            if (rootDir == null || !rootDir.isDirectory()) {
+                return getUsage(true);
+            }
+            final CountDownLatch finished = new CountDownLatch(1);
+            final boolean[] walkCancelled = new boolean[1];
+            DirectoryWalker walker = new DirectoryWalker(rootDir)
+                    .setParallelism(parallelism)
+                    .setDirectoryVisitor(this);
+            walker.start(new DirectoryWalker.Listener() {
+                @Override
+                public void onFilesFound(List<File> files) {
+                }
+
+                @Override
+                public void onWalkFinished(int filesCount, boolean cancelled) {
+                    walkCancelled[0] = cancelled;
+                    finished.countDown();
+                }
+            });
+            try {
+                finished.await();
+            } catch (InterruptedException e) {
+                // pending directories are skipped, the totals so far are partial
+                walker.cancel();
+                Thread.currentThread().interrupt();
+                return getUsage(false);
+            }
+            return getUsage(!walkCancelled[0]);
+        }
+
+        @Override
+        public List<File> visitDirectory(File directory) {
+            DirectoryTotals totals = getDirectoryTotals(directory);
+            for (int category = 0; category < CATEGORIES_COUNT; category++) {
+                bytes.addAndGet(category, totals.bytes[category]);
+                filesCount.addAndGet(category, totals.filesCount[category]);
+            }
+            directoriesCount.incrementAndGet();
+            reportProgress();
+            return totals.subDirectories;
+        }
+
+        private void reportProgress() {
+            if (listener == null) {
+                return;
+            }
+            long now = System.currentTimeMillis();
+            long lastTime = lastProgressTime.get();
+            if (now - lastTime >= progressIntervalMillis && lastProgressTime.compareAndSet(lastTime, now)) {
+                listener.onProgress(getUsage(false));
+            }
+        }
+
+        private Usage getUsage(boolean done) {
+            long[] usageBytes = new long[CATEGORIES_COUNT];
+            int[] usageFilesCount = new int[CATEGORIES_COUNT];
+            for (int category = 0; category < CATEGORIES_COUNT; category++) {
+                usageBytes[category] = bytes.get(category);
+                usageFilesCount[category] = (int) filesCount.get(category);
+            }
+            return new Usage(usageBytes, usageFilesCount, directoriesCount.get(), done);
+        }
+    }
+}
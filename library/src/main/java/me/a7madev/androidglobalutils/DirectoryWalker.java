@@ -0,0 +1,453 @@
+package me.a7madev.androidglobalutils;
+
+import java.io.Closeable;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Parallel directory walker. Every sub directory is scanned as a separate task on a worker pool
+ * and matching files are pushed to a listener (or an iterator) in batches while the walk is running.
+ * Symbolic links to directories are not followed, a link cycle can not make the walk endless.
+ * A walker is single use: create a new one for every walk.
+ */
+public class DirectoryWalker {
+
+    public static final String TAG = DirectoryWalker.class.getSimpleName();
+
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    // batches the iterator keeps ahead of its consumer, the walk waits when they are not taken
+    private static final int MAX_QUEUED_BATCHES = 16;
+    private static final long QUEUE_POLL_MILLIS = 100;
+    private static final List<File> END_OF_WALK = Collections.emptyList();
+
+    /**
+     * Walk callbacks, invoked on the walker threads. Calls are never made concurrently.
+     */
+    public interface Listener {
+
+        /**
+         * A batch of matching files was found
+         * @param files Files batch, owned by the listener
+         */
+        void onFilesFound(List<File> files);
+
+        /**
+         * The walk is finished, no more batches will be delivered
+         * @param filesCount Number of matched files
+         * @param cancelled true if the walk was cancelled before it finished
+         */
+        void onWalkFinished(int filesCount, boolean cancelled);
+    }
+
+    /**
+     * Iterator over the files of a walk. Close it when it is not iterated to the end,
+     * the walk is cancelled and its threads are released.
+     */
+    public interface FileIterator extends Iterator<File>, Closeable {
+
+        /**
+         * Cancel the walk, hasNext() returns false after
+         */
+        @Override
+        void close();
+    }
+
+    /**
+     * Directory callback replacing the file matching, for walks that total each directory themselves
+     */
+    interface DirectoryVisitor {
+
+        /**
+         * Visit a directory, invoked concurrently on the walker threads
+         * @param directory Directory
+         * @return sub directories to walk, or null
+         */
+        List<File> visitDirectory(File directory);
+    }
+
+    private final File rootDir;
+    private ExtensionMatcher extensionMatcher;
+    private DirectoryVisitor directoryVisitor;
+    private boolean includeDirectory;
+    private int maxDepth = UNLIMITED;
+    private int maxFiles = UNLIMITED;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicBoolean cancelled = new AtomicBoolean();
+    private final AtomicInteger pendingDirectories = new AtomicInteger();
+    private final AtomicInteger filesCount = new AtomicInteger();
+    private final Object deliveryLock = new Object();
+    private volatile boolean limitReached;
+    private ExecutorService executor;
+    private Listener listener;
+
+    /**
+     * Directory Walker
+     * @param rootDir directory to walk
+     */
+    public DirectoryWalker(File rootDir) {
+        this.rootDir = rootDir;
+    }
+
+    /**
+     * Set accepted file extensions
+     * @param acceptExtensions extensions to be listed: .png, .jpg, .mp4 (null accepts all files, empty array accepts none)
+     * @return DirectoryWalker
+     */
+    public DirectoryWalker setAcceptExtensions(String[] acceptExtensions) {
+        this.extensionMatcher = acceptExtensions != null ? ExtensionMatcher.forExtensions(acceptExtensions) : null;
+        return this;
+    }
+
+    /**
+     * Set accepted file extensions matcher
+     * @param extensionMatcher ExtensionMatcher (null accepts all files)
+     * @return DirectoryWalker
+     */
+    public DirectoryWalker setExtensionMatcher(ExtensionMatcher extensionMatcher) {
+        this.extensionMatcher = extensionMatcher;
+        return this;
+    }
+
+    /**
+     * Visit every directory instead of delivering files, no batches are delivered
+     * @param directoryVisitor DirectoryVisitor
+     * @return DirectoryWalker
+     */
+    DirectoryWalker setDirectoryVisitor(DirectoryVisitor directoryVisitor) {
+        this.directoryVisitor = directoryVisitor;
+        return this;
+    }
+
+    /**
+     * Include directories in the results
+     * @param includeDirectory boolean
+     * @return DirectoryWalker
+     */
+    public DirectoryWalker setIncludeDirectory(boolean includeDirectory) {
+        this.includeDirectory = includeDirectory;
+        return this;
+    }
+
+    /**
+     * Set maximum depth to descend below the root directory (0 lists the root directory only)
+     * @param maxDepth int or UNLIMITED
+     * @return DirectoryWalker
+     */
+    public DirectoryWalker setMaxDepth(int maxDepth) {
+        this.maxDepth = Math.max(0, maxDepth);
+        return this;
+    }
+
+    /**
+     * Set maximum number of files to deliver, the walk stops when it is reached
+     * @param maxFiles int or UNLIMITED
+     * @return DirectoryWalker
+     */
+    public DirectoryWalker setMaxFiles(int maxFiles) {
+        this.maxFiles = Math.max(0, maxFiles);
+        return this;
+    }
+
+    /**
+     * Set number of files per delivered batch
+     * @param batchSize int
+     * @return DirectoryWalker
+     */
+    public DirectoryWalker setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /**
+     * Set number of worker threads
+     * @param parallelism int, defaults to the number of available processors
+     * @return DirectoryWalker
+     */
+    public DirectoryWalker setParallelism(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+        return this;
+    }
+
+    /**
+     * Start walking in the background
+     * @param listener Listener receiving the batches
+     */
+    public void start(Listener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("listener == null");
+        }
+        if (!started.compareAndSet(false, true)) {
+            throw new IllegalStateException("DirectoryWalker can only be started once");
+        }
+        this.listener = listener;
+        this.executor = Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory(TAG));
+
+        pendingDirectories.incrementAndGet();
+        try {
+            if (rootDir != null && rootDir.isDirectory()) {
+                submitDirectory(rootDir, 0);
+            }
+        } finally {
+            onDirectoryDone();
+        }
+    }
+
+    /**
+     * Walk and wait for the result
+     * @return Array list of files
+     */
+    public ArrayList<File> walk() {
+        final ArrayList<File> fileList = new ArrayList<>();
+        final CountDownLatch finished = new CountDownLatch(1);
+        start(new Listener() {
+            @Override
+            public void onFilesFound(List<File> files) {
+                synchronized (fileList) {
+                    fileList.addAll(files);
+                }
+            }
+
+            @Override
+            public void onWalkFinished(int filesCount, boolean cancelled) {
+                finished.countDown();
+            }
+        });
+        try {
+            finished.await();
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+        }
+        synchronized (fileList) {
+            return new ArrayList<>(fileList);
+        }
+    }
+
+    /**
+     * Start walking and return an iterator over the files as they are found.
+     * hasNext() blocks until the next batch is delivered or the walk is finished. The walk keeps at
+     * most MAX_QUEUED_BATCHES batches ahead of the iterator: close() an iterator that is not iterated
+     * to the end.
+     * @return FileIterator
+     */
+    public FileIterator iterator() {
+        final BlockingQueue<List<File>> batches = new ArrayBlockingQueue<>(MAX_QUEUED_BATCHES);
+        start(new Listener() {
+            @Override
+            public void onFilesFound(List<File> files) {
+                queueBatch(batches, files);
+            }
+
+            @Override
+            public void onWalkFinished(int filesCount, boolean cancelled) {
+                if (!queueBatch(batches, END_OF_WALK)) {
+                    // cancelled while the queue is full, the batches are dropped for the end of the walk
+                    batches.clear();
+                    batches.offer(END_OF_WALK);
+                }
+            }
+        });
+        return new FileIterator() {
+
+            private List<File> batch = Collections.emptyList();
+            private int position;
+            private boolean finished;
+
+            @Override
+            public boolean hasNext() {
+                while (!finished && position >= batch.size()) {
+                    try {
+                        List<File> next = batches.take();
+                        if (next == END_OF_WALK) {
+                            finished = true;
+                        } else {
+                            batch = next;
+                            position = 0;
+                        }
+                    } catch (InterruptedException e) {
+                        cancel();
+                        finished = true;
+                        Thread.currentThread().interrupt();
+                    }
+                }
+                return position < batch.size();
+            }
+
+            @Override
+            public File next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return batch.get(position++);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public void close() {
+                cancel();
+                finished = true;
+                batch = Collections.emptyList();
+            }
+        };
+    }
+
+    /**
+     * Cancel the walk, pending directories are skipped and no more batches are delivered
+     */
+    public void cancel() {
+        cancelled.set(true);
+    }
+
+    /**
+     * Is walk cancelled
+     * @return boolean
+     */
+    public boolean isCancelled() {
+        return cancelled.get();
+    }
+
+    private boolean isStopped() {
+        return limitReached || cancelled.get();
+    }
+
+    private void submitDirectory(final File directory, final int depth) {
+        pendingDirectories.incrementAndGet();
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        scanDirectory(directory, depth);
+                    } catch (Exception e) {
+                        logThis(TAG, "scanDirectory Exception", e);
+                    } finally {
+                        onDirectoryDone();
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logThis(TAG, "submitDirectory RejectedExecutionException", e);
+            onDirectoryDone();
+        }
+    }
+
+    private void scanDirectory(File directory, int depth) {
+        if (isStopped()) {
+            return;
+        }
+        if (directoryVisitor != null) {
+            visitDirectory(directory, depth);
+            return;
+        }
+        File listFile[] = directory.listFiles();
+        if (listFile == null || listFile.length == 0) {
+            return;
+        }
+        List<File> batch = new ArrayList<>(Math.min(batchSize, listFile.length));
+        for (File aListFile : listFile) {
+            if (isStopped()) {
+                break;
+            }
+            if (aListFile.isDirectory()) {
+                if (GlobalFileUtils.isSymbolicLink(aListFile)) {
+                    continue;
+                }
+                if (includeDirectory) {
+                    batch = addToBatch(batch, aListFile);
+                }
+                if (depth < maxDepth) {
+                    submitDirectory(aListFile, depth + 1);
+                }
+            } else if (extensionMatcher == null || extensionMatcher.matches(aListFile)) {
+                batch = addToBatch(batch, aListFile);
+            }
+        }
+        deliverBatch(batch);
+    }
+
+    private void visitDirectory(File directory, int depth) {
+        List<File> subDirectories = directoryVisitor.visitDirectory(directory);
+        if (subDirectories == null || depth >= maxDepth) {
+            return;
+        }
+        for (File subDirectory : subDirectories) {
+            if (isStopped()) {
+                break;
+            }
+            submitDirectory(subDirectory, depth + 1);
+        }
+    }
+
+    // wait while the iterator queue is full, false if the walk was cancelled meanwhile
+    private boolean queueBatch(BlockingQueue<List<File>> batches, List<File> batch) {
+        try {
+            while (!batches.offer(batch, QUEUE_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (cancelled.get()) {
+                    return false;
+                }
+            }
+            return true;
+        } catch (InterruptedException e) {
+            cancel();
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private List<File> addToBatch(List<File> batch, File file) {
+        if (filesCount.incrementAndGet() > maxFiles) {
+            limitReached = true;
+            return batch;
+        }
+        batch.add(file);
+        if (batch.size() >= batchSize) {
+            deliverBatch(batch);
+            return new ArrayList<>(batchSize);
+        }
+        return batch;
+    }
+
+    private void deliverBatch(List<File> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        synchronized (deliveryLock) {
+            if (!cancelled.get()) {
+                listener.onFilesFound(batch);
+            }
+        }
+    }
+
+    private void onDirectoryDone() {
+        if (pendingDirectories.decrementAndGet() == 0) {
+            executor.shutdown();
+            synchronized (deliveryLock) {
+                listener.onWalkFinished(Math.min(filesCount.get(), maxFiles), cancelled.get());
+            }
+        }
+    }
+}
@@ -0,0 +1,414 @@
+package me.a7madev.androidglobalutils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Disk cache with a byte quota and least recently used eviction.
+ * Entry sizes and access order are kept in an append only journal, so opening the cache replays
+ * the journal instead of listing the directory and eviction never scans modification times.
+ * Entries are written to a temp file and renamed into place, readers never see partial files.
+ * Entry files are kept in a subdirectory, apart from the journal.
+ */
+public class DiskCacheManager {
+
+    public static final String TAG = DiskCacheManager.class.getSimpleName();
+
+    private static final String JOURNAL_FILE = "journal";
+    private static final String ENTRIES_DIRECTORY = "entries";
+    private static final String TEMP_SUFFIX = ".tmp";
+    private static final Pattern KEY_PATTERN = Pattern.compile("[a-z0-9_-]{1,120}");
+
+    private static final int JOURNAL_MAGIC = 0x444A524E; // DJRN
+    private static final byte OP_PUT = 1;
+    private static final byte OP_READ = 2;
+    private static final byte OP_REMOVE = 3;
+    private static final int COMPACT_THRESHOLD = 2000;
+    private static final int COPY_BUFFER_SIZE = 16 * 1024;
+
+    private final File directory;
+    private final File entriesDirectory;
+    private final File journalFile;
+    private long maxBytes;
+
+    // key and size, iterated from least to most recently used
+    private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicInteger tempFileCount = new AtomicInteger();
+    private long totalBytes;
+    private int redundantOpsCount;
+    private DataOutputStream journalWriter;
+
+    /**
+     * Open a cache in the storage directory
+     * @param directoryName Your directory name (see GlobalFileUtils.getStorageDirectory)
+     * @param maxBytes Byte quota
+     * @return DiskCacheManager or null if the directory can not be created
+     */
+    public static DiskCacheManager open(String directoryName, long maxBytes) {
+        // not the downloads folder getStorageDirectory falls back to, it is shared with other apps
+        File directory = GlobalFileUtils.getAppStorageDirectory(directoryName);
+        return directory != null ? new DiskCacheManager(directory, maxBytes) : null;
+    }
+
+    /**
+     * Disk Cache Manager
+     * @param directory Cache directory, used by this cache only
+     * @param maxBytes Byte quota
+     */
+    public DiskCacheManager(File directory, long maxBytes) {
+        this.directory = directory;
+        this.entriesDirectory = new File(directory, ENTRIES_DIRECTORY);
+        this.journalFile = new File(directory, JOURNAL_FILE);
+        this.maxBytes = maxBytes;
+        if (!entriesDirectory.exists() && !entriesDirectory.mkdirs()) {
+            logThis(TAG, "DiskCacheManager: could not create " + entriesDirectory, null);
+        }
+        synchronized (this) {
+            readJournal();
+            trimToSize();
+        }
+    }
+
+    /**
+     * Get a cached file and mark it as recently used
+     * @param key Entry key: [a-z0-9_-]{1,120}
+     * @return File or null
+     */
+    public synchronized File get(String key) {
+        validateKey(key);
+        if (entries.get(key) == null) {
+            return null;
+        }
+        File file = new File(entriesDirectory, key);
+        if (!file.exists()) {
+            removeEntry(key);
+            return null;
+        }
+        writeJournal(OP_READ, key, 0, false);
+        return file;
+    }
+
+    /**
+     * Cache bytes
+     * @param key Entry key: [a-z0-9_-]{1,120}
+     * @param data Bytes
+     * @return boolean cached?
+     */
+    public boolean put(String key, byte[] data) {
+        validateKey(key);
+        File tempFile = newTempFile(key);
+        FileOutputStream outputStream = null;
+        boolean written = false;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            outputStream.write(data);
+            outputStream.close();
+            outputStream = null;
+            written = true;
+        } catch (IOException e) {
+            logThis(TAG, "put IOException", e);
+        } finally {
+            GlobalFileUtils.closeQuietly(outputStream);
+        }
+        return commit(key, tempFile, written);
+    }
+
+    /**
+     * Cache the content of a stream, the stream is not closed
+     * @param key Entry key: [a-z0-9_-]{1,120}
+     * @param inputStream InputStream
+     * @return boolean cached?
+     */
+    public boolean put(String key, InputStream inputStream) {
+        validateKey(key);
+        File tempFile = newTempFile(key);
+        FileOutputStream outputStream = null;
+        boolean written = false;
+        try {
+            outputStream = new FileOutputStream(tempFile);
+            byte[] buffer = new byte[COPY_BUFFER_SIZE];
+            int read;
+            while ((read = inputStream.read(buffer)) != -1) {
+                outputStream.write(buffer, 0, read);
+            }
+            outputStream.close();
+            outputStream = null;
+            written = true;
+        } catch (IOException e) {
+            logThis(TAG, "put IOException", e);
+        } finally {
+            GlobalFileUtils.closeQuietly(outputStream);
+        }
+        return commit(key, tempFile, written);
+    }
+
+    /**
+     * Remove an entry
+     * @param key Entry key: [a-z0-9_-]{1,120}
+     * @return boolean removed?
+     */
+    public synchronized boolean remove(String key) {
+        validateKey(key);
+        return entries.containsKey(key) && removeEntry(key);
+    }
+
+    /**
+     * Remove all entries
+     */
+    public synchronized void clear() {
+        for (String key : new ArrayList<>(entries.keySet())) {
+            GlobalFileUtils.deleteFile(new File(entriesDirectory, key));
+        }
+        entries.clear();
+        totalBytes = 0;
+        rebuildJournal();
+    }
+
+    /**
+     * Size of all entries
+     * @return long bytes
+     */
+    public synchronized long size() {
+        return totalBytes;
+    }
+
+    /**
+     * Number of entries
+     * @return int
+     */
+    public synchronized int getEntriesCount() {
+        return entries.size();
+    }
+
+    /**
+     * Byte quota
+     * @return long bytes
+     */
+    public synchronized long getMaxBytes() {
+        return maxBytes;
+    }
+
+    /**
+     * Change the byte quota, evicting entries if needed
+     * @param maxBytes long bytes
+     */
+    public synchronized void setMaxBytes(long maxBytes) {
+        this.maxBytes = maxBytes;
+        trimToSize();
+    }
+
+    /**
+     * Flush and close the journal. Later calls reopen it.
+     */
+    public synchronized void close() {
+        GlobalFileUtils.closeQuietly(journalWriter);
+        journalWriter = null;
+    }
+
+    private File newTempFile(String key) {
+        return new File(entriesDirectory, key + "." + tempFileCount.incrementAndGet() + TEMP_SUFFIX);
+    }
+
+    private synchronized boolean commit(String key, File tempFile, boolean written) {
+        File file = new File(entriesDirectory, key);
+        if (!written || !tempFile.renameTo(file)) {
+            GlobalFileUtils.deleteFile(tempFile);
+            return false;
+        }
+        long size = file.length();
+        Long previousSize = entries.put(key, size);
+        if (previousSize != null) {
+            totalBytes -= previousSize;
+            redundantOpsCount++;
+        }
+        totalBytes += size;
+        writeJournal(OP_PUT, key, size, true);
+        trimToSize();
+        return true;
+    }
+
+    private boolean removeEntry(String key) {
+        Long size = entries.remove(key);
+        if (size != null) {
+            totalBytes -= size;
+        }
+        File file = new File(entriesDirectory, key);
+        boolean deleted = !file.exists() || GlobalFileUtils.deleteFile(file);
+        redundantOpsCount++;
+        writeJournal(OP_REMOVE, key, 0, true);
+        return deleted;
+    }
+
+    private void trimToSize() {
+        Iterator<Map.Entry<String, Long>> iterator = entries.entrySet().iterator();
+        List<String> evictedKeys = new ArrayList<>();
+        long bytes = totalBytes;
+        while (bytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<String, Long> entry = iterator.next();
+            evictedKeys.add(entry.getKey());
+            bytes -= entry.getValue();
+        }
+        for (String key : evictedKeys) {
+            removeEntry(key);
+        }
+    }
+
+    private void readJournal() {
+        if (!journalFile.exists()) {
+            return;
+        }
+        DataInputStream inputStream = null;
+        boolean corrupted = false;
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(journalFile)));
+            if (inputStream.readInt() != JOURNAL_MAGIC) {
+                corrupted = true;
+                return;
+            }
+            while (true) {
+                byte op;
+                try {
+                    op = inputStream.readByte();
+                } catch (EOFException e) {
+                    break;
+                }
+                String key = inputStream.readUTF();
+                if (op == OP_PUT) {
+                    long size = inputStream.readLong();
+                    Long previousSize = entries.put(key, size);
+                    if (previousSize != null) {
+                        totalBytes -= previousSize;
+                    }
+                    totalBytes += size;
+                } else if (op == OP_REMOVE) {
+                    Long previousSize = entries.remove(key);
+                    if (previousSize != null) {
+                        totalBytes -= previousSize;
+                    }
+                } else if (op == OP_READ) {
+                    entries.get(key);
+                } else {
+                    corrupted = true;
+                    break;
+                }
+                redundantOpsCount++;
+            }
+            redundantOpsCount -= entries.size();
+        } catch (IOException e) {
+            // a record cut by a crash, keep what was read before it
+            logThis(TAG, "readJournal IOException", e);
+            corrupted = true;
+        } finally {
+            GlobalFileUtils.closeQuietly(inputStream);
+            if (corrupted) {
+                indexEntriesDirectory();
+                rebuildJournal();
+            }
+        }
+    }
+
+    // after a corrupt journal, add the entry files no record mentions so they count against the
+    // quota, as the least recently used. Temp files of interrupted writes are deleted
+    private void indexEntriesDirectory() {
+        File listFile[] = entriesDirectory.listFiles();
+        if (listFile == null) {
+            return;
+        }
+        Map<String, Long> knownEntries = new LinkedHashMap<>(entries);
+        entries.clear();
+        for (File aListFile : listFile) {
+            String name = aListFile.getName();
+            if (aListFile.isDirectory() || knownEntries.containsKey(name)) {
+                continue;
+            }
+            if (KEY_PATTERN.matcher(name).matches()) {
+                long size = aListFile.length();
+                entries.put(name, size);
+                totalBytes += size;
+            } else {
+                GlobalFileUtils.deleteFile(aListFile);
+            }
+        }
+        entries.putAll(knownEntries);
+    }
+
+    private void writeJournal(byte op, String key, long size, boolean flush) {
+        try {
+            if (journalWriter == null) {
+                boolean newJournal = !journalFile.exists() || journalFile.length() == 0;
+                journalWriter = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(journalFile, true)));
+                if (newJournal) {
+                    journalWriter.writeInt(JOURNAL_MAGIC);
+                }
+            }
+            journalWriter.writeByte(op);
+            journalWriter.writeUTF(key);
+            if (op == OP_PUT) {
+                journalWriter.writeLong(size);
+            }
+            if (op == OP_READ) {
+                redundantOpsCount++;
+            }
+            if (flush) {
+                journalWriter.flush();
+            }
+        } catch (IOException e) {
+            logThis(TAG, "writeJournal IOException", e);
+        }
+        if (redundantOpsCount >= COMPACT_THRESHOLD && redundantOpsCount >= entries.size()) {
+            rebuildJournal();
+        }
+    }
+
+    private void rebuildJournal() {
+        GlobalFileUtils.closeQuietly(journalWriter);
+        journalWriter = null;
+        File tempFile = new File(directory, JOURNAL_FILE + TEMP_SUFFIX);
+        DataOutputStream outputStream = null;
+        boolean written = false;
+        try {
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            outputStream.writeInt(JOURNAL_MAGIC);
+            for (Map.Entry<String, Long> entry : entries.entrySet()) {
+                outputStream.writeByte(OP_PUT);
+                outputStream.writeUTF(entry.getKey());
+                outputStream.writeLong(entry.getValue());
+            }
+            outputStream.close();
+            outputStream = null;
+            written = true;
+        } catch (IOException e) {
+            logThis(TAG, "rebuildJournal IOException", e);
+        } finally {
+            GlobalFileUtils.closeQuietly(outputStream);
+        }
+        if (written && tempFile.renameTo(journalFile)) {
+            redundantOpsCount = 0;
+        } else {
+            GlobalFileUtils.deleteFile(tempFile);
+        }
+    }
+
+    private static void validateKey(String key) {
+        if (key == null || !KEY_PATTERN.matcher(key).matches()) {
+            throw new IllegalArgumentException("keys must match [a-z0-9_-]{1,120}: " + key);
+        }
+    }
+}
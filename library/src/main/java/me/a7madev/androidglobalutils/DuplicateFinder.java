@@ -0,0 +1,401 @@
+package me.a7madev.androidglobalutils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Finds files with identical content in three stages, each one only looking at the survivors
+ * of the previous one: group by length, then hash a small head and tail sample, then hash
+ * the whole content over memory mapped chunks in parallel.
+ * Digests are cached by path, modification time and length, and the cache can be saved
+ * so later runs only hash new or modified files.
+ */
+public class DuplicateFinder {
+
+    public static final String TAG = DuplicateFinder.class.getSimpleName();
+
+    private static final int SAMPLE_SIZE = 4096;
+    private static final long CHUNK_SIZE = 4 * 1024 * 1024;
+    private static final String DIGEST_ALGORITHM = "SHA-1";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int CACHE_MAGIC = 0x44555043; // DUPC
+    private static final int CACHE_VERSION = 1;
+    // smallest entry of the cache file: empty strings
+    private static final int MIN_CACHE_ENTRY_BYTES = 2 + 8 + 8 + 2 + 2;
+
+    private static class CachedDigest {
+
+        private final long lastModified;
+        private final long length;
+        private final String sampleDigest;
+        private volatile String contentDigest;
+
+        private CachedDigest(long lastModified, long length, String sampleDigest, String contentDigest) {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.sampleDigest = sampleDigest;
+            this.contentDigest = contentDigest;
+        }
+    }
+
+    private final Map<String, CachedDigest> digestCache = new ConcurrentHashMap<>();
+    private final int parallelism;
+
+    /**
+     * Duplicate Finder
+     * @param parallelism Number of hashing threads
+     */
+    public DuplicateFinder(int parallelism) {
+        this.parallelism = Math.max(1, parallelism);
+    }
+
+    /**
+     * Find groups of files with identical content, waiting for the result
+     * @param files Files to compare, directories and empty files are ignored. A file listed twice,
+     *              or through two paths, is only compared once.
+     * @return List of duplicate groups, every group has at least two files
+     */
+    public List<List<File>> findDuplicates(Collection<File> files) {
+        List<List<File>> duplicates = new ArrayList<>();
+        if (files == null || files.size() < 2) {
+            return duplicates;
+        }
+
+        // stage 1: same length
+        Map<Long, List<File>> sizeGroups = new HashMap<>();
+        Set<String> canonicalPaths = new HashSet<>();
+        for (File file : files) {
+            long length = file.isFile() ? file.length() : 0;
+            // the same file must not be reported as its own duplicate
+            if (length > 0 && canonicalPaths.add(getCanonicalPath(file))) {
+                List<File> group = sizeGroups.get(length);
+                if (group == null) {
+                    group = new ArrayList<>(2);
+                    sizeGroups.put(length, group);
+                }
+                group.add(file);
+            }
+        }
+        List<File> candidates = new ArrayList<>();
+        for (List<File> group : sizeGroups.values()) {
+            if (group.size() > 1) {
+                candidates.addAll(group);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return duplicates;
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory(TAG));
+        try {
+            // stage 2: same length and head / tail sample
+            Map<String, List<File>> sampleGroups = groupBy(candidates, getSampleDigests(executor, candidates));
+            candidates.clear();
+            for (List<File> group : sampleGroups.values()) {
+                if (group.size() > 1) {
+                    candidates.addAll(group);
+                }
+            }
+
+            // stage 3: same content
+            Map<String, List<File>> contentGroups = groupBy(candidates, getContentDigests(executor, candidates));
+            for (List<File> group : contentGroups.values()) {
+                if (group.size() > 1) {
+                    duplicates.add(group);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+        return duplicates;
+    }
+
+    /**
+     * Load digests saved by saveCache
+     * @param cacheFile Cache file
+     * @return boolean loaded?
+     */
+    public boolean loadCache(File cacheFile) {
+        if (cacheFile == null || !cacheFile.exists()) {
+            return false;
+        }
+        DataInputStream inputStream = null;
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(cacheFile)));
+            if (inputStream.readInt() != CACHE_MAGIC || inputStream.readInt() != CACHE_VERSION) {
+                return false;
+            }
+            // the count is checked against the file length, a corrupt count does not allocate
+            int entriesCount = inputStream.readInt();
+            if (entriesCount < 0 || entriesCount > cacheFile.length() / MIN_CACHE_ENTRY_BYTES) {
+                throw new IOException("Corrupt cache, invalid count: " + entriesCount);
+            }
+            // merged only once the whole file is read, a corrupt file adds nothing
+            Map<String, CachedDigest> loadedDigests = new HashMap<>(entriesCount * 2);
+            for (int i = 0; i < entriesCount; i++) {
+                String path = inputStream.readUTF();
+                long lastModified = inputStream.readLong();
+                long length = inputStream.readLong();
+                String sampleDigest = inputStream.readUTF();
+                String contentDigest = inputStream.readUTF();
+                loadedDigests.put(path, new CachedDigest(lastModified, length, sampleDigest, contentDigest.isEmpty() ? null : contentDigest));
+            }
+            digestCache.putAll(loadedDigests);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            logThis(TAG, "loadCache Exception", e);
+        } finally {
+            GlobalFileUtils.closeQuietly(inputStream);
+        }
+        return false;
+    }
+
+    /**
+     * Save cached digests, replacing the previous cache file atomically
+     * @param cacheFile Cache file
+     * @return boolean saved?
+     */
+    public boolean saveCache(File cacheFile) {
+        File tempFile = new File(cacheFile.getPath() + ".tmp");
+        DataOutputStream outputStream = null;
+        boolean written = false;
+        try {
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            List<Map.Entry<String, CachedDigest>> entries = new ArrayList<>(digestCache.entrySet());
+            outputStream.writeInt(CACHE_MAGIC);
+            outputStream.writeInt(CACHE_VERSION);
+            outputStream.writeInt(entries.size());
+            for (Map.Entry<String, CachedDigest> entry : entries) {
+                CachedDigest cachedDigest = entry.getValue();
+                String contentDigest = cachedDigest.contentDigest;
+                outputStream.writeUTF(entry.getKey());
+                outputStream.writeLong(cachedDigest.lastModified);
+                outputStream.writeLong(cachedDigest.length);
+                outputStream.writeUTF(cachedDigest.sampleDigest);
+                outputStream.writeUTF(contentDigest != null ? contentDigest : "");
+            }
+            outputStream.close();
+            outputStream = null;
+            written = true;
+        } catch (IOException e) {
+            logThis(TAG, "saveCache IOException", e);
+        } finally {
+            GlobalFileUtils.closeQuietly(outputStream);
+        }
+        if (written && tempFile.renameTo(cacheFile)) {
+            return true;
+        }
+        GlobalFileUtils.deleteFile(tempFile);
+        return false;
+    }
+
+    /**
+     * Number of cached digests
+     * @return int
+     */
+    public int getCacheSize() {
+        return digestCache.size();
+    }
+
+    /**
+     * Remove all cached digests
+     */
+    public void clearCache() {
+        digestCache.clear();
+    }
+
+    private static Map<String, List<File>> groupBy(List<File> files, List<String> digests) {
+        Map<String, List<File>> groups = new HashMap<>();
+        for (int i = 0; i < files.size(); i++) {
+            String digest = digests.get(i);
+            if (digest != null) {
+                // include the length, samples of files with different lengths must not match
+                String key = files.get(i).length() + ":" + digest;
+                List<File> group = groups.get(key);
+                if (group == null) {
+                    group = new ArrayList<>(2);
+                    groups.put(key, group);
+                }
+                group.add(files.get(i));
+            }
+        }
+        return groups;
+    }
+
+    private List<String> getSampleDigests(ExecutorService executor, List<File> files) throws InterruptedException {
+        List<Future<String>> futures = new ArrayList<>(files.size());
+        for (final File file : files) {
+            futures.add(executor.submit(new Callable<String>() {
+                @Override
+                public String call() throws Exception {
+                    return getCachedDigest(file).sampleDigest;
+                }
+            }));
+        }
+        List<String> digests = new ArrayList<>(files.size());
+        for (Future<String> future : futures) {
+            String digest = null;
+            try {
+                digest = future.get();
+            } catch (ExecutionException e) {
+                logThis(TAG, "getSampleDigests ExecutionException", e);
+            }
+            digests.add(digest);
+        }
+        return digests;
+    }
+
+    private List<String> getContentDigests(ExecutorService executor, List<File> files) throws InterruptedException {
+        // every chunk of every file is hashed as its own task, then the chunk digests are combined per file
+        List<List<Future<byte[]>>> chunkFutures = new ArrayList<>(files.size());
+        List<CachedDigest> cachedDigests = new ArrayList<>(files.size());
+        for (final File file : files) {
+            CachedDigest cachedDigest = null;
+            List<Future<byte[]>> fileChunks = new ArrayList<>();
+            try {
+                cachedDigest = getCachedDigest(file);
+                if (cachedDigest.contentDigest == null) {
+                    for (long position = 0; position < cachedDigest.length; position += CHUNK_SIZE) {
+                        final long chunkPosition = position;
+                        final long chunkSize = Math.min(CHUNK_SIZE, cachedDigest.length - position);
+                        fileChunks.add(executor.submit(new Callable<byte[]>() {
+                            @Override
+                            public byte[] call() throws Exception {
+                                return digestChunk(file, chunkPosition, chunkSize);
+                            }
+                        }));
+                    }
+                }
+            } catch (IOException | NoSuchAlgorithmException e) {
+                logThis(TAG, "getContentDigests Exception", e);
+            }
+            cachedDigests.add(cachedDigest);
+            chunkFutures.add(fileChunks);
+        }
+
+        List<String> digests = new ArrayList<>(files.size());
+        for (int i = 0; i < files.size(); i++) {
+            CachedDigest cachedDigest = cachedDigests.get(i);
+            String contentDigest = null;
+            if (cachedDigest != null) {
+                contentDigest = cachedDigest.contentDigest;
+                if (contentDigest == null) {
+                    try {
+                        MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+                        for (Future<byte[]> chunkFuture : chunkFutures.get(i)) {
+                            messageDigest.update(chunkFuture.get());
+                        }
+                        contentDigest = toHex(messageDigest.digest());
+                        cachedDigest.contentDigest = contentDigest;
+                    } catch (NoSuchAlgorithmException | ExecutionException e) {
+                        logThis(TAG, "getContentDigests Exception", e);
+                    }
+                }
+            }
+            digests.add(contentDigest);
+        }
+        return digests;
+    }
+
+    private CachedDigest getCachedDigest(File file) throws IOException, NoSuchAlgorithmException {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+        CachedDigest cachedDigest = digestCache.get(path);
+        if (cachedDigest == null || cachedDigest.lastModified != lastModified || cachedDigest.length != length) {
+            String sampleDigest = digestSample(file, length);
+            // the sample of a small file is its whole content
+            String contentDigest = length <= SAMPLE_SIZE * 2 ? sampleDigest : null;
+            cachedDigest = new CachedDigest(lastModified, length, sampleDigest, contentDigest);
+            digestCache.put(path, cachedDigest);
+        }
+        return cachedDigest;
+    }
+
+    private static String digestSample(File file, long length) throws IOException, NoSuchAlgorithmException {
+        MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            FileChannel channel = inputStream.getChannel();
+            if (length <= SAMPLE_SIZE * 2) {
+                readInto(channel, 0, (int) length, messageDigest);
+            } else {
+                readInto(channel, 0, SAMPLE_SIZE, messageDigest);
+                readInto(channel, length - SAMPLE_SIZE, SAMPLE_SIZE, messageDigest);
+            }
+        } finally {
+            GlobalFileUtils.closeQuietly(inputStream);
+        }
+        return toHex(messageDigest.digest());
+    }
+
+    private static void readInto(FileChannel channel, long position, int size, MessageDigest messageDigest) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position + buffer.position());
+            if (read < 0) {
+                break;
+            }
+        }
+        buffer.flip();
+        messageDigest.update(buffer);
+    }
+
+    private static byte[] digestChunk(File file, long position, long size) throws IOException, NoSuchAlgorithmException {
+        MessageDigest messageDigest = MessageDigest.getInstance(DIGEST_ALGORITHM);
+        FileInputStream inputStream = new FileInputStream(file);
+        try {
+            MappedByteBuffer chunk = inputStream.getChannel().map(FileChannel.MapMode.READ_ONLY, position, size);
+            messageDigest.update(chunk);
+        } finally {
+            GlobalFileUtils.closeQuietly(inputStream);
+        }
+        return messageDigest.digest();
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] hex = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            hex[i * 2] = HEX_DIGITS[(bytes[i] >> 4) & 0x0F];
+            hex[i * 2 + 1] = HEX_DIGITS[bytes[i] & 0x0F];
+        }
+        return new String(hex);
+    }
+
+    private static String getCanonicalPath(File file) {
+        try {
+            return file.getCanonicalPath();
+        } catch (IOException e) {
+            return file.getAbsolutePath();
+        }
+    }
+}
@@ -0,0 +1,391 @@
+package me.a7madev.androidglobalutils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Minimal JPEG metadata reader: orientation, capture time and dimensions.
+ * Only the segment headers are read until the frame header, other segments are skipped with a seek,
+ * and the EXIF (APP1) segment is parsed in place in a pooled buffer. The dimensions are taken from
+ * the frame header only, the EXIF sizes can be stale after an edit.
+ * Plain Java, no Android classes: unreadable files are reported by the return values, not logged.
+ */
+public class ExifReader {
+
+    public static final String TAG = ExifReader.class.getSimpleName();
+
+    // same values as ExifInterface
+    public static final int ORIENTATION_UNDEFINED = 0;
+    public static final int ORIENTATION_NORMAL = 1;
+    public static final int ORIENTATION_FLIP_HORIZONTAL = 2;
+    public static final int ORIENTATION_ROTATE_180 = 3;
+    public static final int ORIENTATION_FLIP_VERTICAL = 4;
+    public static final int ORIENTATION_TRANSPOSE = 5;
+    public static final int ORIENTATION_ROTATE_90 = 6;
+    public static final int ORIENTATION_TRANSVERSE = 7;
+    public static final int ORIENTATION_ROTATE_270 = 8;
+
+    private static final int MARKER_SOI = 0xD8;
+    private static final int MARKER_SOS = 0xDA;
+    private static final int MARKER_EOI = 0xD9;
+    private static final int MARKER_APP1 = 0xE1;
+
+    private static final int TAG_ORIENTATION = 0x0112;
+    private static final int TAG_EXIF_IFD = 0x8769;
+    private static final int TAG_DATE_TIME_ORIGINAL = 0x9003;
+
+    private static final int TYPE_SHORT = 3;
+    private static final int DATE_TIME_LENGTH = 19;
+
+    // a segment length is two bytes
+    private static final int BUFFER_SIZE = 0x10000;
+    private static final int MAX_POOLED_BUFFERS = 4;
+    private static final int BATCH_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+    // mapped to Process.THREAD_PRIORITY_BACKGROUND by the Android runtime
+    private static final int BATCH_THREAD_PRIORITY = Thread.NORM_PRIORITY - 1;
+
+    private static final ConcurrentLinkedQueue<byte[]> bufferPool = new ConcurrentLinkedQueue<>();
+    private static ExecutorService executor;
+
+    /**
+     * Image metadata, fields are 0 when missing. width and height are the frame header size.
+     */
+    public static class Metadata {
+
+        public int orientation;
+        public int width;
+        public int height;
+        // capture time as the number yyyyMMddHHmmss, in the camera local time
+        public long dateTimeOriginal;
+
+        /**
+         * Capture time in the device time zone
+         * @return long milliseconds, 0 when missing
+         */
+        public long getDateTimeOriginalMillis() {
+            if (dateTimeOriginal == 0) {
+                return 0;
+            }
+            Calendar calendar = Calendar.getInstance();
+            calendar.clear();
+            long value = dateTimeOriginal;
+            int second = (int) (value % 100);
+            value /= 100;
+            int minute = (int) (value % 100);
+            value /= 100;
+            int hour = (int) (value % 100);
+            value /= 100;
+            int day = (int) (value % 100);
+            value /= 100;
+            int month = (int) (value % 100);
+            calendar.set((int) (value / 100), month - 1, day, hour, minute, second);
+            return calendar.getTimeInMillis();
+        }
+
+        /**
+         * Width and height after applying the orientation
+         * @return boolean
+         */
+        public boolean isSwappingSides() {
+            return orientation >= ORIENTATION_TRANSPOSE && orientation <= ORIENTATION_ROTATE_270;
+        }
+
+        private void clear() {
+            orientation = ORIENTATION_UNDEFINED;
+            width = 0;
+            height = 0;
+            dateTimeOriginal = 0;
+        }
+    }
+
+    /**
+     * Read the metadata of a JPEG file
+     * @param file File
+     * @return Metadata, or null if the file is not a readable JPEG
+     */
+    public static Metadata read(File file) {
+        Metadata metadata = new Metadata();
+        return read(file, metadata) ? metadata : null;
+    }
+
+    /**
+     * Read the metadata of a JPEG file into an existing object
+     * @param file File
+     * @param metadata Metadata to fill, cleared first
+     * @return boolean true if the file is a readable JPEG
+     */
+    public static boolean read(File file, Metadata metadata) {
+        metadata.clear();
+        if (file == null || !file.isFile()) {
+            return false;
+        }
+        byte[] buffer = obtainBuffer();
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file, "r");
+            return readSegments(randomAccessFile, buffer, metadata);
+        } catch (IOException e) {
+            // unreadable or truncated, not a readable JPEG
+            metadata.clear();
+        } finally {
+            close(randomAccessFile);
+            releaseBuffer(buffer);
+        }
+        return false;
+    }
+
+    /**
+     * Read the orientation of an image
+     * @param path Image path
+     * @return int orientation, ORIENTATION_NORMAL when missing or not a JPEG
+     */
+    public static int readOrientation(String path) {
+        Metadata metadata = new Metadata();
+        if (path != null && read(new File(path), metadata) && metadata.orientation != ORIENTATION_UNDEFINED) {
+            return metadata.orientation;
+        }
+        return ORIENTATION_NORMAL;
+    }
+
+    /**
+     * Read the metadata of a list of files on a worker pool, waiting for the result
+     * @param files Files list
+     * @return Map of every JPEG file and its Metadata, in the same order as the list
+     */
+    public static Map<File, Metadata> read(final List<File> files) {
+        Map<File, Metadata> results = new LinkedHashMap<>();
+        if (files == null || files.isEmpty()) {
+            return results;
+        }
+
+        int chunksCount = Math.min(files.size(), BATCH_THREADS * 4);
+        int chunkSize = (files.size() + chunksCount - 1) / chunksCount;
+        List<Future<Metadata[]>> futures = new ArrayList<>(chunksCount);
+        for (int start = 0; start < files.size(); start += chunkSize) {
+            final List<File> chunk = files.subList(start, Math.min(files.size(), start + chunkSize));
+            futures.add(getExecutor().submit(new Callable<Metadata[]>() {
+                @Override
+                public Metadata[] call() {
+                    Metadata[] chunkResults = new Metadata[chunk.size()];
+                    for (int i = 0; i < chunkResults.length; i++) {
+                        chunkResults[i] = read(chunk.get(i));
+                    }
+                    return chunkResults;
+                }
+            }));
+        }
+
+        int index = 0;
+        for (Future<Metadata[]> future : futures) {
+            Metadata[] chunkResults;
+            try {
+                chunkResults = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return results;
+            } catch (ExecutionException e) {
+                // the files of a failed chunk are left out like unreadable files
+                chunkResults = new Metadata[Math.min(chunkSize, files.size() - index)];
+            }
+            for (Metadata metadata : chunkResults) {
+                File file = files.get(index++);
+                if (metadata != null) {
+                    results.put(file, metadata);
+                }
+            }
+        }
+        return results;
+    }
+
+    private static boolean readSegments(RandomAccessFile file, byte[] buffer, Metadata metadata) throws IOException {
+        long length = file.length();
+        if (length < 4) {
+            return false;
+        }
+        file.readFully(buffer, 0, 2);
+        if ((buffer[0] & 0xFF) != 0xFF || (buffer[1] & 0xFF) != MARKER_SOI) {
+            return false;
+        }
+        long position = 2;
+        while (position + 4 <= length) {
+            file.seek(position);
+            file.readFully(buffer, 0, 4);
+            if ((buffer[0] & 0xFF) != 0xFF) {
+                break;
+            }
+            int marker = buffer[1] & 0xFF;
+            if (marker == 0xFF) {
+                // fill byte before a marker
+                position++;
+                continue;
+            }
+            if (marker == MARKER_SOS || marker == MARKER_EOI) {
+                break;
+            }
+            int segmentLength = ((buffer[2] & 0xFF) << 8) | (buffer[3] & 0xFF);
+            if (segmentLength < 2) {
+                break;
+            }
+            int payloadLength = Math.min(segmentLength - 2, (int) Math.min(Integer.MAX_VALUE, length - position - 4));
+            if (marker == MARKER_APP1 && payloadLength > 14) {
+                file.readFully(buffer, 0, payloadLength);
+                if (buffer[0] == 'E' && buffer[1] == 'x' && buffer[2] == 'i' && buffer[3] == 'f' && buffer[4] == 0 && buffer[5] == 0) {
+                    parseTiff(buffer, 6, payloadLength, metadata);
+                }
+            } else if (isStartOfFrame(marker) && payloadLength >= 5) {
+                // frame header: precision, height, width
+                file.readFully(buffer, 0, 5);
+                metadata.height = ((buffer[1] & 0xFF) << 8) | (buffer[2] & 0xFF);
+                metadata.width = ((buffer[3] & 0xFF) << 8) | (buffer[4] & 0xFF);
+                return true;
+            }
+            position += 2 + segmentLength;
+        }
+        return true;
+    }
+
+    private static boolean isStartOfFrame(int marker) {
+        return marker >= 0xC0 && marker <= 0xCF && marker != 0xC4 && marker != 0xC8 && marker != 0xCC;
+    }
+
+    private static void parseTiff(byte[] buffer, int tiffStart, int end, Metadata metadata) {
+        if (tiffStart + 8 > end) {
+            return;
+        }
+        boolean littleEndian;
+        if (buffer[tiffStart] == 'I' && buffer[tiffStart + 1] == 'I') {
+            littleEndian = true;
+        } else if (buffer[tiffStart] == 'M' && buffer[tiffStart + 1] == 'M') {
+            littleEndian = false;
+        } else {
+            return;
+        }
+        long ifd0Offset = readInt(buffer, tiffStart + 4, littleEndian) & 0xFFFFFFFFL;
+        long exifIfdOffset = parseIfd(buffer, tiffStart, end, ifd0Offset, littleEndian, metadata);
+        if (exifIfdOffset > 0) {
+            parseIfd(buffer, tiffStart, end, exifIfdOffset, littleEndian, metadata);
+        }
+    }
+
+    // returns the Exif IFD offset found in this IFD, or 0
+    private static long parseIfd(byte[] buffer, int tiffStart, int end, long ifdOffset, boolean littleEndian, Metadata metadata) {
+        long exifIfdOffset = 0;
+        long ifdStart = tiffStart + ifdOffset;
+        if (ifdOffset < 8 || ifdStart + 2 > end) {
+            return 0;
+        }
+        int entriesCount = readShort(buffer, (int) ifdStart, littleEndian);
+        for (int i = 0; i < entriesCount; i++) {
+            int entry = (int) ifdStart + 2 + i * 12;
+            if (entry + 12 > end) {
+                break;
+            }
+            int tag = readShort(buffer, entry, littleEndian);
+            int type = readShort(buffer, entry + 2, littleEndian);
+            int value = type == TYPE_SHORT ? readShort(buffer, entry + 8, littleEndian) : readInt(buffer, entry + 8, littleEndian);
+            switch (tag) {
+                case TAG_ORIENTATION:
+                    if (value >= ORIENTATION_NORMAL && value <= ORIENTATION_ROTATE_270) {
+                        metadata.orientation = value;
+                    }
+                    break;
+                case TAG_EXIF_IFD:
+                    exifIfdOffset = value & 0xFFFFFFFFL;
+                    break;
+                case TAG_DATE_TIME_ORIGINAL:
+                    long dateOffset = tiffStart + (value & 0xFFFFFFFFL);
+                    if (dateOffset + DATE_TIME_LENGTH <= end) {
+                        metadata.dateTimeOriginal = parseDateTime(buffer, (int) dateOffset);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        return exifIfdOffset;
+    }
+
+    // "yyyy:MM:dd HH:mm:ss" to yyyyMMddHHmmss, 0 if malformed
+    private static long parseDateTime(byte[] buffer, int offset) {
+        long value = 0;
+        for (int i = 0; i < DATE_TIME_LENGTH; i++) {
+            int c = buffer[offset + i];
+            if (i == 4 || i == 7 || i == 10 || i == 13 || i == 16) {
+                continue;
+            }
+            if (c < '0' || c > '9') {
+                return 0;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static int readShort(byte[] buffer, int offset, boolean littleEndian) {
+        if (littleEndian) {
+            return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8);
+        }
+        return ((buffer[offset] & 0xFF) << 8) | (buffer[offset + 1] & 0xFF);
+    }
+
+    private static int readInt(byte[] buffer, int offset, boolean littleEndian) {
+        if (littleEndian) {
+            return (buffer[offset] & 0xFF) | ((buffer[offset + 1] & 0xFF) << 8)
+                    | ((buffer[offset + 2] & 0xFF) << 16) | ((buffer[offset + 3] & 0xFF) << 24);
+        }
+        return ((buffer[offset] & 0xFF) << 24) | ((buffer[offset + 1] & 0xFF) << 16)
+                | ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(BATCH_THREADS, new ThreadFactory() {
+                private final AtomicInteger threadCount = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, TAG + "-" + threadCount.incrementAndGet());
+                    thread.setDaemon(true);
+                    thread.setPriority(BATCH_THREAD_PRIORITY);
+                    return thread;
+                }
+            });
+        }
+        return executor;
+    }
+
+    private static void close(RandomAccessFile file) {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+                // read only, nothing to lose
+            }
+        }
+    }
+
+    private static byte[] obtainBuffer() {
+        byte[] buffer = bufferPool.poll();
+        return buffer != null ? buffer : new byte[BUFFER_SIZE];
+    }
+
+    private static void releaseBuffer(byte[] buffer) {
+        if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+            bufferPool.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package me.a7madev.androidglobalutils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable, case insensitive file extension matcher.
+ * Extensions are compiled once into a reverse suffix trie, so matching a name walks it backwards
+ * from the last character without lowercasing or allocating.
+ */
+public final class ExtensionMatcher {
+
+    public static final String TAG = ExtensionMatcher.class.getSimpleName();
+
+    private static final int NO_NODE = -1;
+    private static final int MAX_COMPILED_MATCHERS = 32;
+
+    // matchers compiled from extension arrays, keyed by a copy of the array content, least recently used first
+    private static final Map<List<String>, ExtensionMatcher> compiledMatchers = new LinkedHashMap<List<String>, ExtensionMatcher>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<List<String>, ExtensionMatcher> eldest) {
+            return size() > MAX_COMPILED_MATCHERS;
+        }
+    };
+
+    // trie node i is reached through labels[i], children are linked by firstChild / nextSibling
+    private final char[] labels;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final boolean[] terminal;
+    private final int extensionsCount;
+
+    private ExtensionMatcher(char[] labels, int[] firstChild, int[] nextSibling, boolean[] terminal, int extensionsCount) {
+        this.labels = labels;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.terminal = terminal;
+        this.extensionsCount = extensionsCount;
+    }
+
+    /**
+     * Compile a new matcher
+     * @param extensions accepted extensions: .png, .jpg, .mp4
+     * @return ExtensionMatcher
+     */
+    public static ExtensionMatcher compile(String... extensions) {
+        List<Character> labelList = new ArrayList<>();
+        List<Integer> firstChildList = new ArrayList<>();
+        List<Integer> nextSiblingList = new ArrayList<>();
+        List<Boolean> terminalList = new ArrayList<>();
+
+        // root node
+        labelList.add('\0');
+        firstChildList.add(NO_NODE);
+        nextSiblingList.add(NO_NODE);
+        terminalList.add(false);
+
+        int extensionsCount = 0;
+        if (extensions != null) {
+            for (String extension : extensions) {
+                if (extension == null) {
+                    continue;
+                }
+                int node = 0;
+                for (int i = extension.length() - 1; i >= 0; i--) {
+                    char label = Character.toLowerCase(extension.charAt(i));
+                    int child = firstChildList.get(node);
+                    while (child != NO_NODE && labelList.get(child) != label) {
+                        child = nextSiblingList.get(child);
+                    }
+                    if (child == NO_NODE) {
+                        child = labelList.size();
+                        labelList.add(label);
+                        firstChildList.add(NO_NODE);
+                        nextSiblingList.add(firstChildList.get(node));
+                        terminalList.add(false);
+                        firstChildList.set(node, child);
+                    }
+                    node = child;
+                }
+                terminalList.set(node, true);
+                extensionsCount++;
+            }
+        }
+
+        int nodesCount = labelList.size();
+        char[] labels = new char[nodesCount];
+        int[] firstChild = new int[nodesCount];
+        int[] nextSibling = new int[nodesCount];
+        boolean[] terminal = new boolean[nodesCount];
+        for (int i = 0; i < nodesCount; i++) {
+            labels[i] = labelList.get(i);
+            firstChild[i] = firstChildList.get(i);
+            nextSibling[i] = nextSiblingList.get(i);
+            terminal[i] = terminalList.get(i);
+        }
+        return new ExtensionMatcher(labels, firstChild, nextSibling, terminal, extensionsCount);
+    }
+
+    /**
+     * Get the matcher compiled from an extensions array, compiling it on first use.
+     * Matchers are cached by the array content, so a modified array gets a new matcher.
+     * @param extensions accepted extensions: .png, .jpg, .mp4
+     * @return ExtensionMatcher
+     */
+    public static ExtensionMatcher forExtensions(String[] extensions) {
+        if (extensions == null) {
+            return compile();
+        }
+        synchronized (compiledMatchers) {
+            // the lookup key wraps the array, the stored key is a copy
+            ExtensionMatcher matcher = compiledMatchers.get(Arrays.asList(extensions));
+            if (matcher == null) {
+                matcher = compile(extensions);
+                compiledMatchers.put(Arrays.asList(extensions.clone()), matcher);
+            }
+            return matcher;
+        }
+    }
+
+    /**
+     * Does the name end with one of the extensions (case insensitive)
+     * @param name file name or path
+     * @return boolean
+     */
+    public boolean matches(CharSequence name) {
+        if (name == null) {
+            return false;
+        }
+        int node = 0;
+        if (terminal[node]) {
+            return true;
+        }
+        for (int i = name.length() - 1; i >= 0; i--) {
+            char label = Character.toLowerCase(name.charAt(i));
+            int child = firstChild[node];
+            while (child != NO_NODE && labels[child] != label) {
+                child = nextSibling[child];
+            }
+            if (child == NO_NODE) {
+                return false;
+            }
+            node = child;
+            if (terminal[node]) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Does the file name end with one of the extensions (case insensitive)
+     * @param file File
+     * @return boolean
+     */
+    public boolean matches(File file) {
+        // the path shares its suffix with the name and does not need a substring
+        return file != null && matches(file.getPath());
+    }
+
+    /**
+     * Has no extensions, nothing will match
+     * @return boolean
+     */
+    public boolean isEmpty() {
+        return extensionsCount == 0;
+    }
+}
@@ -0,0 +1,335 @@
+package me.a7madev.androidglobalutils;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Persistent index of a directory tree: path, size, modification time and type of every file.
+ * The index is saved as a compact binary snapshot. A rescan only lists the directories whose
+ * modification time changed since the last scan, the others are taken from the snapshot.
+ * Queries are answered from memory without touching the file system.
+ * Note: a file rewritten in place does not change its directory modification time and is only
+ * picked up when something else changes in that directory.
+ */
+public class FileIndex {
+
+    public static final String TAG = FileIndex.class.getSimpleName();
+
+    public static final int TYPE_OTHER = 0;
+    public static final int TYPE_IMAGE = 1;
+    public static final int TYPE_VIDEO = 2;
+
+    private static final int MAGIC = 0x46494458; // FIDX
+    private static final int VERSION = 1;
+    // smallest records of the snapshot: empty strings and no children
+    private static final int MIN_DIRECTORY_RECORD_BYTES = 2 + 8 + 4 + 4;
+    private static final int MIN_SUBDIRECTORY_RECORD_BYTES = 2;
+    private static final int MIN_FILE_RECORD_BYTES = 2 + 8 + 8 + 1;
+
+    /**
+     * Indexed file
+     */
+    public static class Entry {
+
+        public final String directory;
+        public final String name;
+        public final long size;
+        public final long lastModified;
+        public final int type;
+
+        private Entry(String directory, String name, long size, long lastModified, int type) {
+            this.directory = directory;
+            this.name = name;
+            this.size = size;
+            this.lastModified = lastModified;
+            this.type = type;
+        }
+
+        public String getPath() {
+            return directory + File.separatorChar + name;
+        }
+
+        public File getFile() {
+            return new File(directory, name);
+        }
+    }
+
+    private static class DirectoryRecord {
+
+        private final String path;
+        private final long lastModified;
+        private final List<String> subdirectories;
+        private final List<Entry> files;
+
+        private DirectoryRecord(String path, long lastModified, List<String> subdirectories, List<Entry> files) {
+            this.path = path;
+            this.lastModified = lastModified;
+            this.subdirectories = subdirectories;
+            this.files = files;
+        }
+    }
+
+    private final File rootDir;
+    private final File indexFile;
+    private final ExtensionMatcher imageMatcher = ExtensionMatcher.forExtensions(GlobalFileUtils.IMAGE_FILE_EXTENSIONS);
+    private final ExtensionMatcher videoMatcher = ExtensionMatcher.forExtensions(GlobalFileUtils.VIDEO_FILE_EXTENSIONS);
+    private Map<String, DirectoryRecord> directories = new HashMap<>();
+
+    /**
+     * File Index
+     * @param rootDir Indexed directory
+     * @param indexFile File the snapshot is saved to and loaded from
+     */
+    public FileIndex(File rootDir, File indexFile) {
+        this.rootDir = rootDir;
+        this.indexFile = indexFile;
+    }
+
+    /**
+     * Load the saved snapshot
+     * @return boolean true if a valid snapshot of the same root directory was loaded
+     */
+    public synchronized boolean load() {
+        if (indexFile == null || !indexFile.exists()) {
+            return false;
+        }
+        DataInputStream inputStream = null;
+        try {
+            inputStream = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)));
+            if (inputStream.readInt() != MAGIC || inputStream.readInt() != VERSION
+                    || !rootDir.getPath().equals(inputStream.readUTF())) {
+                return false;
+            }
+            // counts are checked against the file length, a corrupt count does not allocate
+            long fileLength = indexFile.length();
+            int directoriesCount = readCount(inputStream, fileLength / MIN_DIRECTORY_RECORD_BYTES);
+            Map<String, DirectoryRecord> loadedDirectories = new HashMap<>(directoriesCount * 2);
+            for (int i = 0; i < directoriesCount; i++) {
+                String path = inputStream.readUTF();
+                long lastModified = inputStream.readLong();
+                int subdirectoriesCount = readCount(inputStream, fileLength / MIN_SUBDIRECTORY_RECORD_BYTES);
+                List<String> subdirectories = new ArrayList<>(subdirectoriesCount);
+                for (int j = 0; j < subdirectoriesCount; j++) {
+                    subdirectories.add(inputStream.readUTF());
+                }
+                int filesCount = readCount(inputStream, fileLength / MIN_FILE_RECORD_BYTES);
+                List<Entry> files = new ArrayList<>(filesCount);
+                for (int j = 0; j < filesCount; j++) {
+                    files.add(new Entry(path, inputStream.readUTF(), inputStream.readLong(), inputStream.readLong(), inputStream.readByte()));
+                }
+                loadedDirectories.put(path, new DirectoryRecord(path, lastModified, subdirectories, files));
+            }
+            directories = loadedDirectories;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // a corrupt snapshot is not loaded, the next rescan lists everything
+            logThis(TAG, "load Exception", e);
+        } finally {
+            GlobalFileUtils.closeQuietly(inputStream);
+        }
+        return false;
+    }
+
+    /**
+     * Save the snapshot, replacing the previous one atomically
+     * @return boolean saved?
+     */
+    public synchronized boolean save() {
+        File tempFile = new File(indexFile.getPath() + ".tmp");
+        DataOutputStream outputStream = null;
+        boolean written = false;
+        try {
+            outputStream = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)));
+            outputStream.writeInt(MAGIC);
+            outputStream.writeInt(VERSION);
+            outputStream.writeUTF(rootDir.getPath());
+            outputStream.writeInt(directories.size());
+            for (DirectoryRecord record : directories.values()) {
+                outputStream.writeUTF(record.path);
+                outputStream.writeLong(record.lastModified);
+                outputStream.writeInt(record.subdirectories.size());
+                for (String subdirectory : record.subdirectories) {
+                    outputStream.writeUTF(subdirectory);
+                }
+                outputStream.writeInt(record.files.size());
+                for (Entry entry : record.files) {
+                    outputStream.writeUTF(entry.name);
+                    outputStream.writeLong(entry.size);
+                    outputStream.writeLong(entry.lastModified);
+                    outputStream.writeByte(entry.type);
+                }
+            }
+            outputStream.close();
+            outputStream = null;
+            written = true;
+        } catch (IOException e) {
+            logThis(TAG, "save IOException", e);
+        } finally {
+            GlobalFileUtils.closeQuietly(outputStream);
+        }
+        if (written && tempFile.renameTo(indexFile)) {
+            return true;
+        }
+        GlobalFileUtils.deleteFile(tempFile);
+        return false;
+    }
+
+    /**
+     * Update the index, listing only new directories and directories modified since the last scan
+     * @return int number of listed directories
+     */
+    public synchronized int rescan() {
+        Map<String, DirectoryRecord> scannedDirectories = new HashMap<>(Math.max(16, directories.size() * 2));
+        int listedCount = 0;
+        Deque<String> pending = new ArrayDeque<>();
+        if (rootDir != null && rootDir.isDirectory()) {
+            pending.push(rootDir.getPath());
+        }
+        while (!pending.isEmpty()) {
+            String path = pending.pop();
+            File directory = new File(path);
+            long lastModified = directory.lastModified();
+            DirectoryRecord record = directories.get(path);
+            if (record == null || lastModified == 0 || record.lastModified != lastModified) {
+                record = listDirectory(directory, lastModified);
+                listedCount++;
+            }
+            if (record == null) {
+                continue;
+            }
+            scannedDirectories.put(path, record);
+            for (String subdirectory : record.subdirectories) {
+                pending.push(path + File.separatorChar + subdirectory);
+            }
+        }
+        directories = scannedDirectories;
+        return listedCount;
+    }
+
+    /**
+     * Number of indexed files
+     * @return int
+     */
+    public synchronized int size() {
+        int size = 0;
+        for (DirectoryRecord record : directories.values()) {
+            size += record.files.size();
+        }
+        return size;
+    }
+
+    /**
+     * Get all indexed files
+     * @return List of entries
+     */
+    public synchronized List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<>();
+        for (DirectoryRecord record : directories.values()) {
+            entries.addAll(record.files);
+        }
+        return entries;
+    }
+
+    /**
+     * Find files by extension (case insensitive)
+     * @param extensions .png, .jpg, .mp4
+     * @return List of entries
+     */
+    public synchronized List<Entry> findByExtension(String... extensions) {
+        ExtensionMatcher matcher = ExtensionMatcher.compile(extensions);
+        List<Entry> entries = new ArrayList<>();
+        for (DirectoryRecord record : directories.values()) {
+            for (Entry entry : record.files) {
+                if (matcher.matches(entry.name)) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Find files by type
+     * @param type TYPE_IMAGE, TYPE_VIDEO or TYPE_OTHER
+     * @return List of entries
+     */
+    public synchronized List<Entry> findByType(int type) {
+        List<Entry> entries = new ArrayList<>();
+        for (DirectoryRecord record : directories.values()) {
+            for (Entry entry : record.files) {
+                if (entry.type == type) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Find files modified in a date range
+     * @param fromTime Range start in milliseconds, inclusive
+     * @param toTime Range end in milliseconds, inclusive
+     * @return List of entries
+     */
+    public synchronized List<Entry> findByDateRange(long fromTime, long toTime) {
+        List<Entry> entries = new ArrayList<>();
+        for (DirectoryRecord record : directories.values()) {
+            for (Entry entry : record.files) {
+                if (entry.lastModified >= fromTime && entry.lastModified <= toTime) {
+                    entries.add(entry);
+                }
+            }
+        }
+        return entries;
+    }
+
+    private DirectoryRecord listDirectory(File directory, long lastModified) {
+        File listFile[] = directory.listFiles();
+        if (listFile == null) {
+            return null;
+        }
+        String path = directory.getPath();
+        List<String> subdirectories = new ArrayList<>();
+        List<Entry> files = new ArrayList<>(listFile.length);
+        for (File aListFile : listFile) {
+            if (aListFile.isDirectory()) {
+                subdirectories.add(aListFile.getName());
+            } else {
+                files.add(new Entry(path, aListFile.getName(), aListFile.length(), aListFile.lastModified(), getType(aListFile)));
+            }
+        }
+        return new DirectoryRecord(path, lastModified, Collections.unmodifiableList(subdirectories), files);
+    }
+
+    private int getType(File file) {
+        if (imageMatcher.matches(file)) {
+            return TYPE_IMAGE;
+        } else if (videoMatcher.matches(file)) {
+            return TYPE_VIDEO;
+        }
+        return TYPE_OTHER;
+    }
+
+    private static int readCount(DataInputStream inputStream, long maxCount) throws IOException {
+        int count = inputStream.readInt();
+        if (count < 0 || count > maxCount) {
+            throw new IOException("Corrupt snapshot, invalid count: " + count);
+        }
+        return count;
+    }
+}
@@ -0,0 +1,375 @@
+package me.a7madev.androidglobalutils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In memory file name index for search as you type.
+ * Every name is split into trigrams, lower cased, and each trigram keeps a sorted posting list of
+ * file ids in primitive int arrays held by an open addressing hash table. Names are also indexed
+ * with two leading markers, so prefix queries use their own trigrams. A query intersects the
+ * postings of its trigrams and checks the few remaining candidates with regionMatches, shorter
+ * queries are answered from the trigrams ending with them.
+ * Removed files are marked as deleted and the index is compacted when they become too many.
+ */
+public class FileNameIndex {
+
+    public static final String TAG = FileNameIndex.class.getSimpleName();
+
+    // start of name marker, not a character found in file names
+    private static final char START_MARKER = '\uFFFF';
+    private static final long EMPTY_KEY = -1;
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int INITIAL_POSTING_SIZE = 4;
+
+    // files, by id
+    private String[] paths = new String[INITIAL_CAPACITY];
+    private int[] nameOffsets = new int[INITIAL_CAPACITY];
+    private boolean[] removed = new boolean[INITIAL_CAPACITY];
+    private int idsCount;
+    private int removedCount;
+    private final Map<String, Integer> pathIds = new HashMap<>();
+
+    // trigram hash table
+    private long[] trigramKeys;
+    private int[][] postings;
+    private int[] postingSizes;
+    private int trigramsCount;
+
+    public FileNameIndex() {
+        initTable(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Add a file, does nothing if it is already indexed
+     * @param file File
+     */
+    public void add(File file) {
+        add(file.getPath());
+    }
+
+    /**
+     * Add a file path, does nothing if it is already indexed
+     * @param path File path
+     */
+    public synchronized void add(String path) {
+        if (path == null || pathIds.containsKey(path)) {
+            return;
+        }
+        int id = idsCount++;
+        if (id == paths.length) {
+            int capacity = paths.length * 2;
+            paths = Arrays.copyOf(paths, capacity);
+            nameOffsets = Arrays.copyOf(nameOffsets, capacity);
+            removed = Arrays.copyOf(removed, capacity);
+        }
+        paths[id] = path;
+        nameOffsets[id] = path.lastIndexOf(File.separatorChar) + 1;
+        pathIds.put(path, id);
+        indexName(id);
+    }
+
+    /**
+     * Add files, for example the result of GlobalFileUtils.getFilesListFromDirectory
+     * @param files Files list
+     */
+    public synchronized void addAll(Collection<File> files) {
+        for (File file : files) {
+            add(file.getPath());
+        }
+    }
+
+    /**
+     * Remove a file
+     * @param file File
+     * @return boolean removed?
+     */
+    public boolean remove(File file) {
+        return remove(file.getPath());
+    }
+
+    /**
+     * Remove a file path
+     * @param path File path
+     * @return boolean removed?
+     */
+    public synchronized boolean remove(String path) {
+        Integer id = pathIds.remove(path);
+        if (id == null) {
+            return false;
+        }
+        removed[id] = true;
+        paths[id] = null;
+        removedCount++;
+        if (removedCount > INITIAL_CAPACITY && removedCount > pathIds.size()) {
+            compact();
+        }
+        return true;
+    }
+
+    /**
+     * Remove all files
+     */
+    public synchronized void clear() {
+        pathIds.clear();
+        paths = new String[INITIAL_CAPACITY];
+        nameOffsets = new int[INITIAL_CAPACITY];
+        removed = new boolean[INITIAL_CAPACITY];
+        idsCount = 0;
+        removedCount = 0;
+        initTable(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Indexed files count
+     * @return int
+     */
+    public synchronized int size() {
+        return pathIds.size();
+    }
+
+    /**
+     * Find files with a name containing the query, ignoring case
+     * @param query Text
+     * @param maxResults Maximum results count
+     * @return List of paths, in insertion order
+     */
+    public synchronized List<String> search(String query, int maxResults) {
+        List<String> results = new ArrayList<>();
+        if (query == null || query.isEmpty() || maxResults <= 0) {
+            return results;
+        }
+        if (query.length() < 3) {
+            collectShort(query, maxResults, results);
+            return results;
+        }
+        int[] slots = getQuerySlots(query, false);
+        if (slots != null) {
+            collect(slots, query, false, maxResults, results);
+        }
+        return results;
+    }
+
+    /**
+     * Find files with a name starting with the query, ignoring case
+     * @param query Text
+     * @param maxResults Maximum results count
+     * @return List of paths, in insertion order
+     */
+    public synchronized List<String> searchPrefix(String query, int maxResults) {
+        List<String> results = new ArrayList<>();
+        if (query == null || query.isEmpty() || maxResults <= 0) {
+            return results;
+        }
+        int[] slots = getQuerySlots(query, true);
+        if (slots != null) {
+            collect(slots, query, true, maxResults, results);
+        }
+        return results;
+    }
+
+    private void indexName(int id) {
+        String path = paths[id];
+        int offset = nameOffsets[id];
+        char first = START_MARKER;
+        char second = START_MARKER;
+        for (int i = offset; i < path.length(); i++) {
+            char third = fold(path.charAt(i));
+            addPosting(trigramKey(first, second, third), id);
+            first = second;
+            second = third;
+        }
+    }
+
+    // hash table slots of the query trigrams, shortest posting first, null if one of them is not indexed
+    private int[] getQuerySlots(String query, boolean prefix) {
+        int[] slots = new int[prefix ? query.length() : query.length() - 2];
+        int slotsCount = 0;
+        char first = prefix ? START_MARKER : 0;
+        char second = prefix ? START_MARKER : 0;
+        for (int i = 0; i < query.length(); i++) {
+            char third = fold(query.charAt(i));
+            if (prefix || i >= 2) {
+                int slot = findSlot(trigramKey(first, second, third));
+                if (trigramKeys[slot] == EMPTY_KEY) {
+                    return null;
+                }
+                // insertion sort by posting size, queries have a few trigrams
+                int position = slotsCount++;
+                while (position > 0 && postingSizes[slots[position - 1]] > postingSizes[slot]) {
+                    slots[position] = slots[position - 1];
+                    position--;
+                }
+                slots[position] = slot;
+            }
+            first = second;
+            second = third;
+        }
+        return slots;
+    }
+
+    private void collect(int[] slots, String query, boolean prefix, int maxResults, List<String> results) {
+        int[] candidates = postings[slots[0]];
+        int candidatesCount = postingSizes[slots[0]];
+        int[] positions = new int[slots.length];
+        for (int c = 0; c < candidatesCount; c++) {
+            int candidate = candidates[c];
+            boolean inAll = true;
+            for (int s = 1; s < slots.length && inAll; s++) {
+                int[] posting = postings[slots[s]];
+                int size = postingSizes[slots[s]];
+                int position = positions[s];
+                while (position < size && posting[position] < candidate) {
+                    position++;
+                }
+                positions[s] = position;
+                inAll = position < size && posting[position] == candidate;
+            }
+            if (!inAll || removed[candidate]) {
+                continue;
+            }
+            boolean matches = prefix
+                    ? paths[candidate].regionMatches(true, nameOffsets[candidate], query, 0, query.length())
+                    : nameContains(candidate, query);
+            if (matches) {
+                results.add(paths[candidate]);
+                if (results.size() >= maxResults) {
+                    return;
+                }
+            }
+        }
+    }
+
+    // a name contains a one or two characters query if one of its trigrams ends with it
+    private void collectShort(String query, int maxResults, List<String> results) {
+        long lastChar = fold(query.charAt(query.length() - 1));
+        long previousChar = query.length() == 2 ? fold(query.charAt(0)) : -1;
+        long[] matchingIds = new long[(idsCount + 63) >>> 6];
+        for (int slot = 0; slot < trigramKeys.length; slot++) {
+            long key = trigramKeys[slot];
+            if (key == EMPTY_KEY || (key & 0xFFFF) != lastChar
+                    || (previousChar != -1 && ((key >>> 16) & 0xFFFF) != previousChar)) {
+                continue;
+            }
+            int[] posting = postings[slot];
+            for (int i = 0; i < postingSizes[slot]; i++) {
+                matchingIds[posting[i] >>> 6] |= 1L << posting[i];
+            }
+        }
+        for (int word = 0; word < matchingIds.length; word++) {
+            long bits = matchingIds[word];
+            while (bits != 0) {
+                int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                if (!removed[id]) {
+                    results.add(paths[id]);
+                    if (results.size() >= maxResults) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    private boolean nameContains(int id, String query) {
+        String path = paths[id];
+        int last = path.length() - query.length();
+        for (int i = nameOffsets[id]; i <= last; i++) {
+            if (path.regionMatches(true, i, query, 0, query.length())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void addPosting(long key, int id) {
+        int slot = findSlot(key);
+        if (trigramKeys[slot] == EMPTY_KEY) {
+            trigramKeys[slot] = key;
+            postings[slot] = new int[INITIAL_POSTING_SIZE];
+            trigramsCount++;
+            if (trigramsCount * 2 > trigramKeys.length) {
+                rehash();
+                slot = findSlot(key);
+            }
+        }
+        int size = postingSizes[slot];
+        int[] posting = postings[slot];
+        // ids are added in increasing order, a repeated trigram of the same name is the last id
+        if (size > 0 && posting[size - 1] == id) {
+            return;
+        }
+        if (size == posting.length) {
+            posting = Arrays.copyOf(posting, size * 2);
+            postings[slot] = posting;
+        }
+        posting[size] = id;
+        postingSizes[slot] = size + 1;
+    }
+
+    private int findSlot(long key) {
+        int mask = trigramKeys.length - 1;
+        int slot = hash(key) & mask;
+        while (trigramKeys[slot] != EMPTY_KEY && trigramKeys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        long[] oldKeys = trigramKeys;
+        int[][] oldPostings = postings;
+        int[] oldSizes = postingSizes;
+        initTable(oldKeys.length * 2);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) {
+                int slot = findSlot(oldKeys[i]);
+                trigramKeys[slot] = oldKeys[i];
+                postings[slot] = oldPostings[i];
+                postingSizes[slot] = oldSizes[i];
+                trigramsCount++;
+            }
+        }
+    }
+
+    private void initTable(int capacity) {
+        trigramKeys = new long[capacity];
+        Arrays.fill(trigramKeys, EMPTY_KEY);
+        postings = new int[capacity][];
+        postingSizes = new int[capacity];
+        trigramsCount = 0;
+    }
+
+    // rebuild without the removed files, ids are reassigned in the same order
+    private void compact() {
+        String[] livePaths = new String[pathIds.size()];
+        int count = 0;
+        for (int id = 0; id < idsCount; id++) {
+            if (!removed[id]) {
+                livePaths[count++] = paths[id];
+            }
+        }
+        clear();
+        for (String path : livePaths) {
+            add(path);
+        }
+    }
+
+    private static long trigramKey(char first, char second, char third) {
+        return ((long) first << 32) | ((long) second << 16) | third;
+    }
+
+    private static int hash(long key) {
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+
+    private static char fold(char c) {
+        return Character.toLowerCase(Character.toUpperCase(c));
+    }
+}
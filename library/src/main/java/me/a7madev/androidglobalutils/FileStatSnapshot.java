@@ -0,0 +1,354 @@
+package me.a7madev.androidglobalutils;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+
+/**
+ * Path, size, modification time and directory flag of a list of files, read once per file
+ * and kept in parallel primitive arrays instead of an object per file.
+ * Sorting compares the captured values only, so no file system call is made while sorting,
+ * and a snapshot sorted by size or date answers range queries with a binary search.
+ */
+public class FileStatSnapshot {
+
+    public static final String TAG = FileStatSnapshot.class.getSimpleName();
+
+    public static final int SORT_NONE = 0;
+    public static final int SORT_NAME = 1;
+    public static final int SORT_SIZE = 2;
+    public static final int SORT_LAST_MODIFIED = 3;
+
+    private final String[] paths;
+    private final long[] sizes;
+    private final long[] lastModified;
+    private final boolean[] directories;
+    private int sortedBy = SORT_NONE;
+    private boolean sortedAscending;
+
+    private interface IndexComparator {
+        int compare(int first, int second);
+    }
+
+    private FileStatSnapshot(int count) {
+        paths = new String[count];
+        sizes = new long[count];
+        lastModified = new long[count];
+        directories = new boolean[count];
+    }
+
+    /**
+     * Capture the stats of a list of files
+     * @param files Files list, for example the result of GlobalFileUtils.getFilesListFromDirectory
+     * @return FileStatSnapshot
+     */
+    public static FileStatSnapshot capture(Collection<File> files) {
+        FileStatSnapshot snapshot = new FileStatSnapshot(files != null ? files.size() : 0);
+        if (files != null) {
+            int i = 0;
+            for (File file : files) {
+                snapshot.paths[i] = file.getPath();
+                snapshot.directories[i] = file.isDirectory();
+                snapshot.sizes[i] = snapshot.directories[i] ? 0 : file.length();
+                snapshot.lastModified[i] = file.lastModified();
+                i++;
+            }
+        }
+        return snapshot;
+    }
+
+    /**
+     * Files count
+     * @return int
+     */
+    public int size() {
+        return paths.length;
+    }
+
+    public String getPath(int index) {
+        return paths[index];
+    }
+
+    public String getName(int index) {
+        return paths[index].substring(paths[index].lastIndexOf(File.separatorChar) + 1);
+    }
+
+    public long getSize(int index) {
+        return sizes[index];
+    }
+
+    public long getLastModified(int index) {
+        return lastModified[index];
+    }
+
+    public boolean isDirectory(int index) {
+        return directories[index];
+    }
+
+    public File getFile(int index) {
+        return new File(paths[index]);
+    }
+
+    /**
+     * Current sort order
+     * @return int SORT_NONE, SORT_NAME, SORT_SIZE or SORT_LAST_MODIFIED
+     */
+    public int getSortedBy() {
+        return sortedBy;
+    }
+
+    /**
+     * Files of the snapshot, in the current order
+     * @return ArrayList of File
+     */
+    public ArrayList<File> toFilesList() {
+        ArrayList<File> files = new ArrayList<>(paths.length);
+        for (String path : paths) {
+            files.add(new File(path));
+        }
+        return files;
+    }
+
+    /**
+     * Sort by file name, ignoring case. Ties keep their current order.
+     * @param ascending boolean
+     * @return FileStatSnapshot this snapshot
+     */
+    public FileStatSnapshot sortByName(boolean ascending) {
+        final String[] names = new String[paths.length];
+        for (int i = 0; i < names.length; i++) {
+            names[i] = getName(i);
+        }
+        sort(new IndexComparator() {
+            @Override
+            public int compare(int first, int second) {
+                return names[first].compareToIgnoreCase(names[second]);
+            }
+        }, ascending);
+        sortedBy = SORT_NAME;
+        return this;
+    }
+
+    /**
+     * Sort by size. Ties keep their current order.
+     * @param ascending boolean
+     * @return FileStatSnapshot this snapshot
+     */
+    public FileStatSnapshot sortBySize(boolean ascending) {
+        sortByKey(sizes, ascending);
+        sortedBy = SORT_SIZE;
+        return this;
+    }
+
+    /**
+     * Sort by modification time. Ties keep their current order.
+     * @param ascending boolean
+     * @return FileStatSnapshot this snapshot
+     */
+    public FileStatSnapshot sortByLastModified(boolean ascending) {
+        sortByKey(lastModified, ascending);
+        sortedBy = SORT_LAST_MODIFIED;
+        return this;
+    }
+
+    /**
+     * Move directories before files, keeping the current order within each group
+     * @return FileStatSnapshot this snapshot
+     */
+    public FileStatSnapshot sortDirectoriesFirst() {
+        int[] order = new int[paths.length];
+        int position = 0;
+        for (int pass = 0; pass < 2; pass++) {
+            for (int i = 0; i < paths.length; i++) {
+                if (directories[i] == (pass == 0)) {
+                    order[position++] = i;
+                }
+            }
+        }
+        permute(order);
+        sortedBy = SORT_NONE;
+        return this;
+    }
+
+    /**
+     * Files with a size in a range, a binary search when sorted by size
+     * @param minSize Minimum size, inclusive
+     * @param maxSize Maximum size, inclusive
+     * @return FileStatSnapshot new snapshot, in the current order
+     */
+    public FileStatSnapshot rangeBySize(long minSize, long maxSize) {
+        return range(sizes, SORT_SIZE, minSize, maxSize);
+    }
+
+    /**
+     * Files modified in a time range, a binary search when sorted by modification time
+     * @param from Start time in milliseconds, inclusive
+     * @param to End time in milliseconds, inclusive
+     * @return FileStatSnapshot new snapshot, in the current order
+     */
+    public FileStatSnapshot rangeByLastModified(long from, long to) {
+        return range(lastModified, SORT_LAST_MODIFIED, from, to);
+    }
+
+    /**
+     * Files with a name matching one of the extensions
+     * @param extensionMatcher ExtensionMatcher
+     * @return FileStatSnapshot new snapshot, in the current order
+     */
+    public FileStatSnapshot filterByExtension(ExtensionMatcher extensionMatcher) {
+        boolean[] accepted = new boolean[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            accepted[i] = !directories[i] && extensionMatcher.matches(paths[i]);
+        }
+        return select(accepted);
+    }
+
+    /**
+     * Only files or only directories
+     * @param directoriesOnly true for directories, false for files
+     * @return FileStatSnapshot new snapshot, in the current order
+     */
+    public FileStatSnapshot filterDirectories(boolean directoriesOnly) {
+        boolean[] accepted = new boolean[paths.length];
+        for (int i = 0; i < paths.length; i++) {
+            accepted[i] = directories[i] == directoriesOnly;
+        }
+        return select(accepted);
+    }
+
+    /**
+     * Total size of the files
+     * @return long bytes
+     */
+    public long getTotalSize() {
+        long totalSize = 0;
+        for (long size : sizes) {
+            totalSize += size;
+        }
+        return totalSize;
+    }
+
+    private FileStatSnapshot range(long[] keys, int sortKey, long min, long max) {
+        if (sortedBy != sortKey) {
+            boolean[] accepted = new boolean[paths.length];
+            for (int i = 0; i < paths.length; i++) {
+                accepted[i] = keys[i] >= min && keys[i] <= max;
+            }
+            return select(accepted);
+        }
+        int start = firstIndex(keys, sortedAscending ? min : max, false);
+        int end = firstIndex(keys, sortedAscending ? max : min, true);
+        FileStatSnapshot snapshot = copyRange(start, Math.max(start, end));
+        snapshot.sortedBy = sortedBy;
+        snapshot.sortedAscending = sortedAscending;
+        return snapshot;
+    }
+
+    // first index past the value in the sort direction, or at the value when not strict
+    private int firstIndex(long[] keys, long value, boolean strict) {
+        int low = 0;
+        int high = keys.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            long key = keys[middle];
+            boolean reached = sortedAscending ? (strict ? key > value : key >= value) : (strict ? key < value : key <= value);
+            if (reached) {
+                high = middle;
+            } else {
+                low = middle + 1;
+            }
+        }
+        return low;
+    }
+
+    private FileStatSnapshot select(boolean[] accepted) {
+        int count = 0;
+        for (boolean a : accepted) {
+            if (a) {
+                count++;
+            }
+        }
+        FileStatSnapshot snapshot = new FileStatSnapshot(count);
+        int position = 0;
+        for (int i = 0; i < accepted.length; i++) {
+            if (accepted[i]) {
+                snapshot.paths[position] = paths[i];
+                snapshot.sizes[position] = sizes[i];
+                snapshot.lastModified[position] = lastModified[i];
+                snapshot.directories[position] = directories[i];
+                position++;
+            }
+        }
+        snapshot.sortedBy = sortedBy;
+        snapshot.sortedAscending = sortedAscending;
+        return snapshot;
+    }
+
+    private FileStatSnapshot copyRange(int start, int end) {
+        FileStatSnapshot snapshot = new FileStatSnapshot(end - start);
+        System.arraycopy(paths, start, snapshot.paths, 0, end - start);
+        System.arraycopy(sizes, start, snapshot.sizes, 0, end - start);
+        System.arraycopy(lastModified, start, snapshot.lastModified, 0, end - start);
+        System.arraycopy(directories, start, snapshot.directories, 0, end - start);
+        return snapshot;
+    }
+
+    private void sortByKey(final long[] keys, boolean ascending) {
+        sort(new IndexComparator() {
+            @Override
+            public int compare(int first, int second) {
+                return keys[first] < keys[second] ? -1 : (keys[first] == keys[second] ? 0 : 1);
+            }
+        }, ascending);
+    }
+
+    // stable merge sort of the indices, then every array is permuted once
+    private void sort(IndexComparator comparator, boolean ascending) {
+        int count = paths.length;
+        int[] order = new int[count];
+        int[] buffer = new int[count];
+        for (int i = 0; i < count; i++) {
+            order[i] = i;
+        }
+        for (int width = 1; width < count; width *= 2) {
+            for (int start = 0; start < count; start += 2 * width) {
+                int middle = Math.min(start + width, count);
+                int end = Math.min(start + 2 * width, count);
+                int left = start;
+                int right = middle;
+                int position = start;
+                while (left < middle && right < end) {
+                    int result = comparator.compare(order[left], order[right]);
+                    if (!ascending) {
+                        result = -result;
+                    }
+                    buffer[position++] = result <= 0 ? order[left++] : order[right++];
+                }
+                while (left < middle) {
+                    buffer[position++] = order[left++];
+                }
+                while (right < end) {
+                    buffer[position++] = order[right++];
+                }
+            }
+            int[] swap = order;
+            order = buffer;
+            buffer = swap;
+        }
+        permute(order);
+        sortedAscending = ascending;
+    }
+
+    private void permute(int[] order) {
+        String[] oldPaths = paths.clone();
+        long[] oldSizes = sizes.clone();
+        long[] oldLastModified = lastModified.clone();
+        boolean[] oldDirectories = directories.clone();
+        for (int i = 0; i < order.length; i++) {
+            paths[i] = oldPaths[order[i]];
+            sizes[i] = oldSizes[order[i]];
+            lastModified[i] = oldLastModified[order[i]];
+            directories[i] = oldDirectories[order[i]];
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package me.a7madev.androidglobalutils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Copies and moves files with FileChannel.transferTo, letting the kernel move the bytes
+ * instead of a heap buffer loop. A move is a plain rename when source and target are on
+ * the same volume. Copies are written to a temp file in the target directory and renamed over
+ * the target only once complete, so a failed or cancelled copy never damages an existing target.
+ * Progress is reported at most once per interval, and a transfer can be cancelled from any thread.
+ */
+public class FileTransfer {
+
+    public static final String TAG = FileTransfer.class.getSimpleName();
+
+    public static final long DEFAULT_PROGRESS_INTERVAL_MILLIS = 100;
+
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+    private static final String TEMP_PREFIX = ".transfer";
+    private static final String TEMP_SUFFIX = ".tmp";
+
+    /**
+     * Progress callback, invoked on the transferring thread
+     */
+    public interface ProgressListener {
+
+        /**
+         * Transfer progress
+         * @param source Source file
+         * @param transferredBytes Bytes transferred so far
+         * @param totalBytes Source file length
+         */
+        void onProgress(File source, long transferredBytes, long totalBytes);
+    }
+
+    private ProgressListener progressListener;
+    private long progressIntervalMillis = DEFAULT_PROGRESS_INTERVAL_MILLIS;
+    private volatile boolean cancelled;
+
+    /**
+     * Set progress listener. In batch mode it is called from several threads.
+     * @param progressListener ProgressListener or null
+     * @return FileTransfer
+     */
+    public FileTransfer setProgressListener(ProgressListener progressListener) {
+        this.progressListener = progressListener;
+        return this;
+    }
+
+    /**
+     * Set minimum time between two progress callbacks of the same file
+     * @param progressIntervalMillis long milliseconds
+     * @return FileTransfer
+     */
+    public FileTransfer setProgressInterval(long progressIntervalMillis) {
+        this.progressIntervalMillis = Math.max(0, progressIntervalMillis);
+        return this;
+    }
+
+    /**
+     * Cancel running and pending transfers, partial copies are deleted and existing targets kept
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Is transfer cancelled
+     * @return boolean
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Copy a file, replacing the target if it exists once the copy is complete
+     * @param source Source file
+     * @param target Target file
+     * @return boolean copied?
+     */
+    public boolean copy(File source, File target) {
+        if (cancelled || source == null || target == null || !source.isFile()
+                || source.getAbsolutePath().equals(target.getAbsolutePath())) {
+            return false;
+        }
+        File targetDir = target.getAbsoluteFile().getParentFile();
+        if (targetDir != null && !targetDir.exists() && !targetDir.mkdirs()) {
+            return false;
+        }
+
+        File tempFile;
+        try {
+            tempFile = File.createTempFile(TEMP_PREFIX, TEMP_SUFFIX, targetDir);
+        } catch (IOException e) {
+            logThis(TAG, "copy IOException", e);
+            return false;
+        }
+
+        FileInputStream inputStream = null;
+        FileOutputStream outputStream = null;
+        boolean copied = false;
+        try {
+            inputStream = new FileInputStream(source);
+            outputStream = new FileOutputStream(tempFile);
+            FileChannel sourceChannel = inputStream.getChannel();
+            FileChannel targetChannel = outputStream.getChannel();
+            long totalBytes = sourceChannel.size();
+            long position = 0;
+            long lastProgressTime = 0;
+            while (position < totalBytes && !cancelled) {
+                long count = sourceChannel.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, totalBytes - position), targetChannel);
+                if (count <= 0) {
+                    break;
+                }
+                position += count;
+                long now = System.currentTimeMillis();
+                if (progressListener != null && position < totalBytes && now - lastProgressTime >= progressIntervalMillis) {
+                    lastProgressTime = now;
+                    progressListener.onProgress(source, position, totalBytes);
+                }
+            }
+            if (position == totalBytes && !cancelled) {
+                // the data reaches the disk before the rename makes it visible
+                targetChannel.force(false);
+                outputStream.close();
+                outputStream = null;
+                copied = tempFile.length() == totalBytes;
+            }
+        } catch (IOException e) {
+            logThis(TAG, "copy IOException", e);
+        } finally {
+            GlobalFileUtils.closeQuietly(inputStream);
+            GlobalFileUtils.closeQuietly(outputStream);
+        }
+
+        if (copied) {
+            tempFile.setLastModified(source.lastModified());
+            copied = !cancelled && tempFile.renameTo(target);
+        }
+        if (!copied) {
+            GlobalFileUtils.deleteFile(tempFile);
+            return false;
+        }
+        if (progressListener != null) {
+            progressListener.onProgress(source, target.length(), target.length());
+        }
+        return true;
+    }
+
+    /**
+     * Copy a file without replacing an existing file: the copy is named "name (1).ext" and so on
+     * @param source Source file
+     * @param targetDir Target directory
+     * @return File copied file or null
+     */
+    public File copyToUniqueFile(File source, File targetDir) {
+        if (source == null || targetDir == null || (!targetDir.exists() && !targetDir.mkdirs())) {
+            return null;
+        }
+        File target = reserveUniqueFile(targetDir, source.getName());
+        if (target == null) {
+            return null;
+        }
+        if (copy(source, target)) {
+            return target;
+        }
+        // the reserved name is still an empty file
+        GlobalFileUtils.deleteFile(target);
+        return null;
+    }
+
+    /**
+     * Move a file, renaming it when possible and copying it otherwise
+     * @param source Source file
+     * @param target Target file
+     * @return boolean moved?
+     */
+    public boolean move(File source, File target) {
+        if (cancelled || source == null || target == null || !source.isFile()) {
+            return false;
+        }
+        File targetDir = target.getAbsoluteFile().getParentFile();
+        if (targetDir != null && !targetDir.exists() && !targetDir.mkdirs()) {
+            return false;
+        }
+        // same volume: rename only updates the directory entries
+        if (source.renameTo(target)) {
+            if (progressListener != null) {
+                progressListener.onProgress(source, target.length(), target.length());
+            }
+            return true;
+        }
+        if (copy(source, target)) {
+            if (!GlobalFileUtils.deleteFile(source)) {
+                logThis(TAG, "move: copied but could not delete " + source, null);
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Copy files into a directory concurrently, waiting for all of them
+     * @param sources Source files
+     * @param targetDir Target directory, files keep their names and replace existing files
+     * @param parallelism Number of files copied at the same time
+     * @return Map of every source and its copy result, in the same order as the list.
+     * A source named like an earlier source of the list is not copied and its result is false.
+     */
+    public Map<File, Boolean> copyAll(List<File> sources, File targetDir, int parallelism) {
+        return transferAll(sources, targetDir, parallelism, false);
+    }
+
+    /**
+     * Move files into a directory concurrently, waiting for all of them
+     * @param sources Source files
+     * @param targetDir Target directory, files keep their names and replace existing files
+     * @param parallelism Number of files moved at the same time
+     * @return Map of every source and its move result, in the same order as the list.
+     * A source named like an earlier source of the list is not moved and its result is false.
+     */
+    public Map<File, Boolean> moveAll(List<File> sources, File targetDir, int parallelism) {
+        return transferAll(sources, targetDir, parallelism, true);
+    }
+
+    private Map<File, Boolean> transferAll(List<File> sources, final File targetDir, int parallelism, final boolean move) {
+        Map<File, Boolean> results = new LinkedHashMap<>();
+        if (sources == null || sources.isEmpty()) {
+            return results;
+        }
+        ExecutorService executor = Executors.newFixedThreadPool(Math.max(1, Math.min(parallelism, sources.size())), new WorkerThreadFactory(TAG));
+        try {
+            // two sources with the same name would race on one target, only the first one is transferred
+            Set<String> targetNames = new HashSet<>();
+            List<Future<Boolean>> futures = new ArrayList<>(sources.size());
+            for (final File source : sources) {
+                // storage volumes are often case insensitive
+                if (source == null || !targetNames.add(source.getName().toLowerCase(Locale.US))) {
+                    logThis(TAG, "transferAll: name conflict, not transferred: " + source, null);
+                    futures.add(null);
+                    continue;
+                }
+                futures.add(executor.submit(new Callable<Boolean>() {
+                    @Override
+                    public Boolean call() {
+                        File target = new File(targetDir, source.getName());
+                        return move ? move(source, target) : copy(source, target);
+                    }
+                }));
+            }
+            for (int i = 0; i < sources.size(); i++) {
+                boolean transferred = false;
+                Future<Boolean> future = futures.get(i);
+                try {
+                    transferred = future != null && future.get();
+                } catch (InterruptedException e) {
+                    cancel();
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    logThis(TAG, "transferAll ExecutionException", e);
+                }
+                results.put(sources.get(i), transferred);
+            }
+        } finally {
+            executor.shutdown();
+        }
+        return results;
+    }
+
+    // create an empty file with a free name, so concurrent callers do not pick the same name
+    static File reserveUniqueFile(File directory, String name) {
+        int extensionIndex = name.lastIndexOf('.');
+        String baseName = extensionIndex > 0 ? name.substring(0, extensionIndex) : name;
+        String extension = extensionIndex > 0 ? name.substring(extensionIndex) : "";
+        File file = new File(directory, name);
+        for (int i = 1; i < 10000; i++) {
+            try {
+                if (file.createNewFile()) {
+                    return file;
+                }
+            } catch (IOException e) {
+                logThis(TAG, "reserveUniqueFile IOException", e);
+                return null;
+            }
+            file = new File(directory, baseName + " (" + i + ")" + extension);
+        }
+        return null;
+    }
+}
@@ -3,22 +3,22 @@ package me.a7madev.androidglobalutils;
 import android.content.ContentResolver;
 import android.content.Context;
 import android.content.Intent;
-import android.database.Cursor;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
-import android.media.ThumbnailUtils;
 import android.net.Uri;
 import android.os.Environment;
-import android.provider.MediaStore;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
 import android.support.v4.content.FileProvider;
 import android.webkit.MimeTypeMap;
 
+import java.io.Closeable;
 import java.io.File;
+import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Map;
 
 import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
 
@@ -26,6 +26,10 @@ public class GlobalFileUtils {
 
     public static final String TAG = GlobalFileUtils.class.getSimpleName();
 
+    // default extensions used to classify files as image or video
+    public static final String[] IMAGE_FILE_EXTENSIONS = {".jpg", ".jpeg", ".png", ".gif", ".bmp", ".webp", ".heic", ".heif"};
+    public static final String[] VIDEO_FILE_EXTENSIONS = {".mp4", ".3gp", ".3g2", ".mkv", ".webm", ".mov", ".m4v", ".avi", ".ts"};
+
     /**
      * Get File Mime Type
      * @param context  The context to use. Use application or activity context
@@ -37,17 +41,14 @@ public class GlobalFileUtils {
         String path = uri.getEncodedPath();
         try {
             if(path != null && !path.isEmpty()){
-                extension = MimeTypeMap.getFileExtensionFromUrl(path.toLowerCase());
-            }
-            if (extension == null || extension.isEmpty()) {
-                String mimeTypeMap = MimeTypeMap.getFileExtensionFromUrl(path.substring(path.lastIndexOf(".")));
-                mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(mimeTypeMap);
-            } else {
-                mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension.toLowerCase());
+                extension = MimeTypeMap.getFileExtensionFromUrl(path);
+                if ((extension == null || extension.isEmpty()) && path.lastIndexOf(".") >= 0) {
+                    extension = MimeTypeMap.getFileExtensionFromUrl(path.substring(path.lastIndexOf(".")));
+                }
             }
+            mimeType = MimeTypeCache.getInstance().getMimeTypeFromExtension(extension);
             if(context != null && mimeType == null){
-                ContentResolver cr = context.getContentResolver();
-                mimeType = cr.getType(uri);
+                mimeType = MimeTypeCache.getInstance().getMimeTypeFromURI(context, uri);
             }
         } catch (Exception e) {
             logThis(TAG, "getMimeType Exception", e);
@@ -93,74 +94,34 @@ public class GlobalFileUtils {
 
 
     /**
-     * Return list of files in a directory
+     * Return list of files in a directory and all its sub directories
      * @param dir  directory as File
      * @param acceptExtensions include all extensions to be listed: .png, .jpg, .mp4
      * @param includeDirectory include directory in the list?
      * @return Array list of files
      */
     public static ArrayList<File> getFilesListFromDirectory(File dir, String[] acceptExtensions, boolean includeDirectory) {
-        ArrayList<File> fileList = new ArrayList<>();
-        if(dir != null && dir.exists()) {
-            File listFile[] = dir.listFiles();
-            if (listFile != null && listFile.length > 0) {
-                for (File aListFile : listFile) {
-                    if (aListFile.isDirectory()) {
-                        if (includeDirectory) {
-                            fileList.add(aListFile);
-                        }
-                        getFilesListFromDirectory(aListFile, acceptExtensions, includeDirectory);
-                    } else {
-                        if (acceptExtensions != null && acceptExtensions.length > 0) {
-                            for (String ext : acceptExtensions) {
-                                if (aListFile.getName().endsWith(ext)) {
-                                    fileList.add(aListFile);
-                                }
-                            }
-                        }
-                    }
-                }
-            }
-        }
-        return fileList;
+        ExtensionMatcher extensionMatcher = acceptExtensions != null ? ExtensionMatcher.forExtensions(acceptExtensions) : ExtensionMatcher.compile();
+        return new DirectoryWalker(dir)
+                .setExtensionMatcher(extensionMatcher)
+                .setIncludeDirectory(includeDirectory)
+                .walk();
     }
 
     /**
-     * Get image or video thumbnail from a file
-     * @param context Context
+     * Get image or video thumbnail from a file, cached in memory and on disk
+     * @param context Context (null to skip the cache)
      * @param file Image
-     * @return Bitmap bitmap object
+     * @return Bitmap bitmap object, shared with the cache when a context is given: do not recycle it
      */
     public static Bitmap getMediaThumbnailFromFile(Context context, File file) {
-
-        Bitmap thumbBitmap;
-
-        // get video thumbnail
-        thumbBitmap = ThumbnailUtils.createVideoThumbnail(file.getPath(), MediaStore.Video.Thumbnails.MICRO_KIND);
-
-        // get image thumbnail
-        if(thumbBitmap == null){
-            thumbBitmap = ThumbnailUtils.createVideoThumbnail(file.getPath(), MediaStore.Images.Thumbnails.MICRO_KIND);
+        if (file == null) {
+            return null;
         }
-
-        // create a thumbnail
-        if(thumbBitmap == null){
-            File image = new File(Uri.fromFile(file).getPath());
-
-            BitmapFactory.Options bounds = new BitmapFactory.Options();
-            bounds.inJustDecodeBounds = true;
-            BitmapFactory.decodeFile(image.getPath(), bounds);
-            if ((bounds.outWidth == -1) || (bounds.outHeight == -1))
-                return null;
-
-            int originalSize = (bounds.outHeight > bounds.outWidth) ? bounds.outHeight
-                    : bounds.outWidth;
-
-            BitmapFactory.Options opts = new BitmapFactory.Options();
-            opts.inSampleSize = originalSize / 256;
-            return BitmapFactory.decodeFile(image.getPath(), opts);
+        if (context == null) {
+            return ThumbnailCache.createThumbnail(file, ThumbnailCache.DEFAULT_THUMBNAIL_SIZE);
         }
-        return thumbBitmap;
+        return ThumbnailCache.getInstance(context).getThumbnail(file);
     }
 
     /**
@@ -180,6 +141,50 @@ public class GlobalFileUtils {
         return fileDeleted;
     }
 
+    /**
+     * Delete files and directory trees (including non empty directories) on a worker pool
+     * @param files Files or directories to be deleted
+     * @return BatchDeleter.Result deleted count, bytes freed and failures
+     */
+    public static BatchDeleter.Result deleteFiles(Collection<File> files) {
+        return new BatchDeleter(Runtime.getRuntime().availableProcessors(), false).delete(files);
+    }
+
+    /**
+     * Copy a file, replacing the target if it exists
+     * @param source Source file
+     * @param target Target file
+     * @return boolean file is copied?
+     */
+    public static boolean copyFile(File source, File target) {
+        return new FileTransfer().copy(source, target);
+    }
+
+    /**
+     * Move a file, renaming it when source and target are on the same volume
+     * @param source Source file
+     * @param target Target file
+     * @return boolean file is moved?
+     */
+    public static boolean moveFile(File source, File target) {
+        return new FileTransfer().move(source, target);
+    }
+
+    /**
+     * Copy a file into the storage directory. An existing file is kept, the copy is then named "name (1).ext"
+     * @param source Source file
+     * @param directoryName Your directory name
+     * @param progressListener FileTransfer.ProgressListener or null
+     * @return File exported file or null
+     */
+    public static File exportFileToStorageDirectory(File source, String directoryName, FileTransfer.ProgressListener progressListener) {
+        File storageDirectory = getStorageDirectory(directoryName);
+        if (source == null || storageDirectory == null) {
+            return null;
+        }
+        return new FileTransfer().setProgressListener(progressListener).copyToUniqueFile(source, storageDirectory);
+    }
+
     /**
      * Get Storage Directory, if doesnt exist, return download directory
      * @param directoryName Your directory name
@@ -214,6 +219,32 @@ public class GlobalFileUtils {
         }
     }
 
+    // the storage directory without the downloads fallback, null if it can not be created
+    static File getAppStorageDirectory(String directoryName) {
+        try {
+            File appFolder = new File(Environment.getExternalStorageDirectory(), "/" + directoryName);
+            if (appFolder.isDirectory() || appFolder.mkdirs()) {
+                return appFolder;
+            }
+        } catch (Exception e) {
+            logThis(TAG, "getAppStorageDirectory Exception", e);
+        }
+        return null;
+    }
+
+    // a link is resolved by its canonical path, links to directories are not followed by the walks.
+    // A file that can not be resolved counts as a link
+    static boolean isSymbolicLink(File file) {
+        try {
+            File parent = file.getParentFile();
+            File canonicalFile = parent != null ? new File(parent.getCanonicalFile(), file.getName()) : file;
+            return !canonicalFile.getCanonicalFile().equals(canonicalFile.getAbsoluteFile());
+        } catch (IOException e) {
+            logThis(TAG, "isSymbolicLink IOException", e);
+            return true;
+        }
+    }
+
     /**
      * Checks if external storage is available for read and write
      * @return Boolean
@@ -256,13 +287,7 @@ public class GlobalFileUtils {
      */
     public static boolean acceptImageFromFile(String[] acceptedImageFileExtensions, File file) {
         try {
-            for (String extension : acceptedImageFileExtensions)
-            {
-                if (file.getName().toLowerCase().endsWith(extension))
-                {
-                    return true;
-                }
-            }
+            return ExtensionMatcher.forExtensions(acceptedImageFileExtensions).matches(file);
         } catch (Exception e) {
             logThis(TAG, "acceptImageFromFile Exception", e);
         }
@@ -277,13 +302,7 @@ public class GlobalFileUtils {
      */
     public static boolean acceptVideoFromFile(String[] acceptedVideoFileExtensions, File file) {
         try {
-            for (String extension : acceptedVideoFileExtensions)
-            {
-                if (file.getName().toLowerCase().endsWith(extension))
-                {
-                    return true;
-                }
-            }
+            return ExtensionMatcher.forExtensions(acceptedVideoFileExtensions).matches(file);
         } catch (Exception e) {
             logThis(TAG, "acceptVideoFromFile Exception", e);
         }
@@ -298,13 +317,7 @@ public class GlobalFileUtils {
      */
     public static boolean acceptImageFromFilePath(String[] acceptedImageFileExtensions, String path) {
         try {
-            for (String extension : acceptedImageFileExtensions)
-            {
-                if (path.toLowerCase().endsWith(extension))
-                {
-                    return true;
-                }
-            }
+            return ExtensionMatcher.forExtensions(acceptedImageFileExtensions).matches(path);
         } catch (Exception e) {
             logThis(TAG, "acceptImageFromFilePath Exception", e);
         }
@@ -319,13 +332,7 @@ public class GlobalFileUtils {
      */
     public static boolean acceptVideoFromFilePath(String[] acceptedVideoFileExtensions, String path) {
         try {
-            for (String extension : acceptedVideoFileExtensions)
-            {
-                if (path.toLowerCase().endsWith(extension))
-                {
-                    return true;
-                }
-            }
+            return ExtensionMatcher.forExtensions(acceptedVideoFileExtensions).matches(path);
         } catch (Exception e) {
             logThis(TAG, "acceptVideoFromFilePath Exception", e);
         }
@@ -403,11 +410,10 @@ public class GlobalFileUtils {
         String mimeType = null;
         try {
             if (uri.getScheme().equals(ContentResolver.SCHEME_CONTENT)) {
-                ContentResolver cr = context.getContentResolver();
-                mimeType = cr.getType(uri);
+                mimeType = MimeTypeCache.getInstance().getMimeTypeFromURI(context, uri);
             } else {
                 String fileExtension = MimeTypeMap.getFileExtensionFromUrl(uri.toString());
-                mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(fileExtension.toLowerCase());
+                mimeType = MimeTypeCache.getInstance().getMimeTypeFromExtension(fileExtension);
             }
         } catch (Exception e) {
             logThis(TAG, "getMimeTypeByURI Exception", e);
@@ -420,9 +426,7 @@ public class GlobalFileUtils {
         try {
             final String url = file.toString();
             final String extension = MimeTypeMap.getFileExtensionFromUrl(url);
-            if (extension != null) {
-                type = MimeTypeMap.getSingleton().getMimeTypeFromExtension(extension.toLowerCase());
-            }
+            type = MimeTypeCache.getInstance().getMimeTypeFromExtension(extension);
             if (type == null) {
                 type = "*/*"; // fallback type. You might set it to */*
             }
@@ -432,21 +436,38 @@ public class GlobalFileUtils {
         return type;
     }
 
+    /**
+     * Get File Path from URI
+     * @param context Context
+     * @param uri File or content uri
+     * @return String path or null
+     */
     public static String getPathFromFileURI(Context context, Uri uri) {
-        String stringPath = null;
-        try {
-            String[] projection = {MediaStore.Images.Media.DATA};
-            Cursor cursor = context.getContentResolver().query(uri, projection, null, null, null);
-            if (cursor == null)
-                return null;
-            int column_index = cursor.getColumnIndexOrThrow(MediaStore.Images.Media.DATA);
-            cursor.moveToFirst();
-            stringPath = cursor.getString(column_index);
-            cursor.close();
-        } catch (IllegalArgumentException e) {
-            logThis(TAG, "getPathFromFileURI Exception", e);
+        return MediaPathResolver.getInstance().getPath(context, uri);
+    }
+
+    /**
+     * Get File Paths from URIs, content uris of the same collection are resolved together
+     * @param context Context
+     * @param uris File or content uris
+     * @return Map of every uri and its path (null if not resolved)
+     */
+    public static Map<Uri, String> getPathsFromFileURIs(Context context, Collection<Uri> uris) {
+        return MediaPathResolver.getInstance().getPaths(context, uris);
+    }
+
+    /**
+     * Close a stream or channel, logging any exception
+     * @param closeable Closeable or null
+     */
+    public static void closeQuietly(Closeable closeable) {
+        if (closeable != null) {
+            try {
+                closeable.close();
+            } catch (IOException e) {
+                logThis(TAG, "closeQuietly IOException", e);
+            }
         }
-        return stringPath;
     }
 
-}
\ No newline at end of file
+}
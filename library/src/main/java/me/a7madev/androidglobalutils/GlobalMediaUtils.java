@@ -1,18 +1,73 @@
 package me.a7madev.androidglobalutils;
 
+import android.content.ContentResolver;
+import android.content.Context;
 import android.net.Uri;
+import android.provider.MediaStore;
+
+import java.io.File;
 
 public class GlobalMediaUtils {
 
     public static final String TAG = GlobalMediaUtils.class.getSimpleName();
 
+    /**
+     * Is Image, by extension or by the file content when the extension is unknown
+     * @param url File url or path
+     * @return boolean
+     */
     public static boolean isImage(String url) {
-        String mimeType = GlobalFileUtils.getMimeType(null, Uri.parse(url));
-        return mimeType != null && mimeType.startsWith("image");
+        Uri uri = Uri.parse(url);
+        String mimeType = GlobalFileUtils.getMimeType(null, uri);
+        if (mimeType == null) {
+            return sniffLocalFile(uri).isImage();
+        }
+        return mimeType.startsWith("image");
     }
 
+    /**
+     * Is Video, by extension or by the file content when the extension is unknown
+     * @param url File url or path
+     * @return boolean
+     */
     public static boolean isVideo(String url) {
-        String mimeType = GlobalFileUtils.getMimeType(null, Uri.parse(url));
-        return mimeType != null && mimeType.startsWith("video");
+        Uri uri = Uri.parse(url);
+        String mimeType = GlobalFileUtils.getMimeType(null, uri);
+        if (mimeType == null) {
+            return sniffLocalFile(uri).isVideo();
+        }
+        return mimeType.startsWith("video");
+    }
+
+    /**
+     * Get a paged gallery of the external storage images and videos, newest first
+     * @param context Context
+     * @param includeImages Include images
+     * @param includeVideos Include videos
+     * @return MediaGallery
+     */
+    public static MediaGallery getMediaGallery(Context context, boolean includeImages, boolean includeVideos) {
+        StringBuilder mediaTypes = new StringBuilder();
+        if (includeImages) {
+            mediaTypes.append(MediaStore.Files.FileColumns.MEDIA_TYPE_IMAGE);
+        }
+        if (includeVideos) {
+            mediaTypes.append(mediaTypes.length() > 0 ? "," : "").append(MediaStore.Files.FileColumns.MEDIA_TYPE_VIDEO);
+        }
+        // nothing included: a selection matching no rows
+        String selection = mediaTypes.length() > 0 ? MediaStore.Files.FileColumns.MEDIA_TYPE + " IN (" + mediaTypes + ")" : "0";
+        return new MediaGallery(context.getContentResolver(), MediaStore.Files.getContentUri("external"))
+                .setSelection(selection, null);
+    }
+
+    private static MediaTypeSniffer.MediaFormat sniffLocalFile(Uri uri) {
+        String scheme = uri.getScheme();
+        if (scheme == null || ContentResolver.SCHEME_FILE.equals(scheme)) {
+            String path = uri.getPath();
+            if (path != null && !path.isEmpty()) {
+                return MediaTypeSniffer.sniff(new File(path));
+            }
+        }
+        return MediaTypeSniffer.MediaFormat.UNKNOWN;
     }
-}
\ No newline at end of file
+}
@@ -16,11 +16,9 @@ import android.content.res.Resources;
 import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
-import android.graphics.Matrix;
 import android.graphics.Point;
 import android.graphics.Typeface;
 import android.graphics.drawable.Drawable;
-import android.media.ExifInterface;
 import android.net.ConnectivityManager;
 import android.net.NetworkInfo;
 import android.net.Uri;
@@ -57,18 +55,32 @@ import org.joda.time.DateTimeZone;
 import org.joda.time.LocalDateTime;
 import org.joda.time.format.DateTimeFormat;
 
-import java.io.IOException;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class GlobalUtils implements GlobalUtilsInterface {
 
     public static final String TAG = GlobalUtils.class.getSimpleName();
 
+    public static final String MAPPED_SHARED_PREFS_DIRECTORY = "mapped_prefs";
+
+    private static volatile boolean mappedSharedPrefsEnabled;
+    private static ExecutorService mappedSharedPrefsExecutor;
+    private static final MappedPrefsStore.Logger MAPPED_SHARED_PREFS_LOGGER = new MappedPrefsStore.Logger() {
+        @Override
+        public void log(String message, Throwable error) {
+            logThis(MappedPrefsStore.TAG, message, error);
+        }
+    };
+
     /**
      * Is build in debug config or release
      * @return  boolean true (debug), false (release)
@@ -147,17 +159,14 @@ public class GlobalUtils implements GlobalUtilsInterface {
     }
 
     /**
-     * Create a new typeface from font file.
+     * Get a typeface from font file, created once and cached (see TypefaceCache.preload)
      * @param context  The context to use. Use application or activity context
      * @param fontName  The file name of the font data in the assets directory (fonts/Roboto-Light.ttf)
-     * @return The new typeface.
+     * @return The typeface, or null if context is null
+     * @throws RuntimeException if the font can not be created, as Typeface.createFromAsset ("Font asset not found")
      */
     public static Typeface getTypeFace(Context context, String fontName){
-        Typeface typeface = null;
-        if(context != null){
-            typeface = Typeface.createFromAsset(context.getAssets(), fontName);
-        }
-        return typeface;
+        return TypefaceCache.getInstance().get(context, fontName);
     }
 
     /**
@@ -189,7 +198,18 @@ public class GlobalUtils implements GlobalUtilsInterface {
      * @return The string array associated with the resource.
      */
     public static String[] getStringArray(Context context, int arrayResId) {
-        return context.getResources().getStringArray(arrayResId);
+        List<String> stringList = ResourceArrayCache.getInstance().getStringList(context, arrayResId);
+        return stringList.toArray(new String[stringList.size()]);
+    }
+
+    /**
+     * Return the string array associated with a particular resource ID, cached.
+     * @param context  The context to use. Use application or activity context
+     * @param arrayResId  Resource id (R.array.name_array)
+     * @return Read only List of strings
+     */
+    public static List<String> getStringList(Context context, int arrayResId) {
+        return ResourceArrayCache.getInstance().getStringList(context, arrayResId);
     }
 
     /**
@@ -199,7 +219,17 @@ public class GlobalUtils implements GlobalUtilsInterface {
      * @return The integer array associated with the resource.
      */
     public static int[] getIntArray(Context context, int arrayResId) {
-        return context.getResources().getIntArray(arrayResId);
+        return ResourceArrayCache.getInstance().getIntList(context, arrayResId).toIntArray();
+    }
+
+    /**
+     * Return the int array associated with a particular resource ID, cached.
+     * @param context  The context to use. Use application or activity context
+     * @param arrayResId  Resource id (R.array.name_array)
+     * @return Read only List of integers, getInt(index) reads without boxing
+     */
+    public static ResourceArrayCache.IntArrayList getIntList(Context context, int arrayResId) {
+        return ResourceArrayCache.getInstance().getIntList(context, arrayResId);
     }
 
     /**
@@ -970,38 +1000,52 @@ public class GlobalUtils implements GlobalUtilsInterface {
     }
 
     /**
-     * Rotate Image
+     * Rotate Image, sampled down to the display size (either orientation)
      * @param filePath String
      * @return Bitmap Image Rotated
      */
     public static Bitmap rotateImage(String filePath) {
-        try {
-            if(validateText(filePath)) {
-                BitmapFactory.Options bounds = new BitmapFactory.Options();
-                bounds.inJustDecodeBounds = true;
-                BitmapFactory.decodeFile(filePath, bounds);
-
-                BitmapFactory.Options opts = new BitmapFactory.Options();
-                Bitmap bm = BitmapFactory.decodeFile(filePath, opts);
-                ExifInterface exif = new ExifInterface(filePath);
-                String orientString = exif.getAttribute(ExifInterface.TAG_ORIENTATION);
-                int orientation = orientString != null ? Integer.parseInt(orientString) : ExifInterface.ORIENTATION_NORMAL;
-
-                int rotationAngle = 0;
-                if (orientation == ExifInterface.ORIENTATION_ROTATE_90) rotationAngle = 90;
-                if (orientation == ExifInterface.ORIENTATION_ROTATE_180) rotationAngle = 180;
-                if (orientation == ExifInterface.ORIENTATION_ROTATE_270) rotationAngle = 270;
-
-                Matrix matrix = new Matrix();
-                matrix.setRotate(rotationAngle, (float) bm.getWidth() / 2, (float) bm.getHeight() / 2);
-                return Bitmap.createBitmap(bm, 0, 0, bounds.outWidth, bounds.outHeight, matrix, true);
-            }
-        } catch (IOException e) {
-            logThis(TAG, "rotateImage IOException", e);
+        if (validateText(filePath)) {
+            DisplayMetrics displayMetrics = Resources.getSystem().getDisplayMetrics();
+            int maxSize = Math.max(displayMetrics.widthPixels, displayMetrics.heightPixels);
+            return BitmapDecoder.decodeSampledImage(filePath, maxSize, maxSize);
+        }
+        return null;
+    }
+
+    /**
+     * Decode Image, rotated by its EXIF orientation and sampled down to the requested size
+     * @param filePath String
+     * @param reqWidth Requested width (0 to ignore)
+     * @param reqHeight Requested height (0 to ignore)
+     * @return Bitmap with both sides at least as large as requested, or null
+     */
+    public static Bitmap decodeSampledImage(String filePath, int reqWidth, int reqHeight) {
+        if (validateText(filePath)) {
+            return BitmapDecoder.decodeSampledImage(filePath, reqWidth, reqHeight);
         }
         return null;
     }
 
+    /**
+     * Calculate the largest power of two sample size that keeps both sides at least as large as requested
+     * @param width Image width
+     * @param height Image height
+     * @param reqWidth Requested width (0 to ignore)
+     * @param reqHeight Requested height (0 to ignore)
+     * @return int BitmapFactory.Options inSampleSize
+     */
+    public static int calculateInSampleSize(int width, int height, int reqWidth, int reqHeight) {
+        int inSampleSize = 1;
+        if (width > 0 && height > 0 && (reqWidth > 0 || reqHeight > 0)) {
+            while ((reqWidth <= 0 || width / (inSampleSize * 2) >= reqWidth)
+                    && (reqHeight <= 0 || height / (inSampleSize * 2) >= reqHeight)) {
+                inSampleSize *= 2;
+            }
+        }
+        return inSampleSize;
+    }
+
     /**
      * Convert String to Double
      * @param string String
@@ -1081,7 +1125,7 @@ public class GlobalUtils implements GlobalUtilsInterface {
     }
 
     /**
-     * Get Shared Prefs By Key
+     * Get Shared Prefs By Key (the value is boxed, use a PrefKey in hot paths)
      * @param context Context
      * @param prefsName String
      * @param className Class String.class, Boolean.class
@@ -1093,16 +1137,32 @@ public class GlobalUtils implements GlobalUtilsInterface {
         Object object = null;
 
         try {
+            MappedPrefsStore mappedPrefs = getMappedSharedPrefs(context, prefsName);
+            if (mappedPrefs != null) {
+                if (className == String.class) {
+                    object = mappedPrefs.getString(key, null);
+                } else if (className == Boolean.class) {
+                    object = mappedPrefs.getBoolean(key, false);
+                } else if (className == Integer.class) {
+                    object = mappedPrefs.getInt(key, 0);
+                } else if (className == Long.class) {
+                    object = mappedPrefs.getLong(key, 0);
+                } else if (className == Float.class) {
+                    object = mappedPrefs.getFloat(key, 0);
+                }
+                return object;
+            }
+            WriteBehindPrefs prefs = WriteBehindPrefs.getInstance(context, prefsName);
             if (className == String.class) {
-                object = initSharedPrefs(context, prefsName).getString(key, null);
+                object = prefs.getString(key, null);
             } else if (className == Boolean.class) {
-                object = initSharedPrefs(context, prefsName).getBoolean(key, false);
+                object = prefs.getBoolean(key, false);
             } else if (className == Integer.class) {
-                object = initSharedPrefs(context, prefsName).getInt(key, 0);
+                object = prefs.getInt(key, 0);
             } else if (className == Long.class) {
-                object = initSharedPrefs(context, prefsName).getLong(key, 0);
+                object = prefs.getLong(key, 0);
             } else if (className == Float.class) {
-                object = initSharedPrefs(context, prefsName).getFloat(key, 0);
+                object = prefs.getFloat(key, 0);
             }
         } catch (Exception e) {
             logThis(TAG, "getSharedPrefs Exception", e);
@@ -1112,7 +1172,8 @@ public class GlobalUtils implements GlobalUtilsInterface {
     }
 
     /**
-     * Initialize Shared Prefs
+     * Initialize Shared Prefs. Changes saved with saveSharedPrefsOne and saveSharedPrefsList are
+     * written in the background, call flushSharedPrefs before reading them from here.
      * @param context Context
      * @param prefsName String
      * @return SharedPreferences
@@ -1121,6 +1182,50 @@ public class GlobalUtils implements GlobalUtilsInterface {
         return context.getSharedPreferences(prefsName, Context.MODE_PRIVATE);
     }
 
+    /**
+     * Use a MappedPrefsStore (append only log file) instead of SharedPreferences for getSharedPrefs,
+     * saveSharedPrefsOne, saveSharedPrefsList, clearSharedPrefs and flushSharedPrefs.
+     * Values are not migrated: after switching, the helpers do not see any value saved with the
+     * other backend (it stays in its file). Set it once, before the first use, in Application.onCreate().
+     * If the mapped store can not be opened the helpers fail (logged, getSharedPrefs returns null),
+     * they never fall back to SharedPreferences.
+     * PrefKey always uses SharedPreferences (WriteBehindPrefs): with this enabled, a PrefKey and the
+     * helpers on the same prefs name read and write different files, do not mix them.
+     * @param enabled boolean
+     */
+    public static void setMappedSharedPrefsEnabled(boolean enabled) {
+        mappedSharedPrefsEnabled = enabled;
+    }
+
+    /**
+     * Is MappedPrefsStore used for the shared prefs helpers
+     * @return boolean
+     */
+    public static boolean isMappedSharedPrefsEnabled() {
+        return mappedSharedPrefsEnabled;
+    }
+
+    // the mapped store of a prefs name, null if disabled. Throws if it can not be opened, so a
+    // helper never reads or writes the SharedPreferences backend instead.
+    private static MappedPrefsStore getMappedSharedPrefs(Context context, String prefsName) {
+        if (!mappedSharedPrefsEnabled) {
+            return null;
+        }
+        MappedPrefsStore store = MappedPrefsStore.getInstance(new File(context.getFilesDir(), MAPPED_SHARED_PREFS_DIRECTORY),
+                prefsName, getMappedSharedPrefsExecutor(), MAPPED_SHARED_PREFS_LOGGER);
+        if (store == null) {
+            throw new IllegalStateException("Mapped shared prefs could not be opened: " + prefsName);
+        }
+        return store;
+    }
+
+    private static synchronized ExecutorService getMappedSharedPrefsExecutor() {
+        if (mappedSharedPrefsExecutor == null) {
+            mappedSharedPrefsExecutor = Executors.newSingleThreadExecutor(new WorkerThreadFactory(MappedPrefsStore.TAG));
+        }
+        return mappedSharedPrefsExecutor;
+    }
+
     /**
      * Clear Shared Prefs
      * @param context Context
@@ -1128,12 +1233,35 @@ public class GlobalUtils implements GlobalUtilsInterface {
      */
     public static void clearSharedPrefs(Context context, String prefsName) {
         try {
-            initSharedPrefs(context, prefsName).edit().clear().apply();
+            MappedPrefsStore mappedPrefs = getMappedSharedPrefs(context, prefsName);
+            if (mappedPrefs != null) {
+                mappedPrefs.clear();
+                return;
+            }
+            WriteBehindPrefs.getInstance(context, prefsName).clear();
         } catch (Exception e) {
             logThis(TAG, "clearSharedPrefs Exception " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Write the pending Shared Prefs changes now (call it in onPause)
+     * @param context Context
+     * @param prefsName String
+     */
+    public static void flushSharedPrefs(Context context, String prefsName) {
+        try {
+            MappedPrefsStore mappedPrefs = getMappedSharedPrefs(context, prefsName);
+            if (mappedPrefs != null) {
+                mappedPrefs.sync();
+                return;
+            }
+            WriteBehindPrefs.getInstance(context, prefsName).flush();
+        } catch (Exception e) {
+            logThis(TAG, "flushSharedPrefs Exception", e);
+        }
+    }
+
     /**
      * Log Intent Extras
      * @param TAG String
@@ -1159,17 +1287,14 @@ public class GlobalUtils implements GlobalUtilsInterface {
 
         try {
             if (key != null) {
-                SharedPreferences.Editor editor = initSharedPrefs(context, prefsName).edit();
-                if (value instanceof String) {
-                    editor.putString(key, (String) value).apply();
-                } else if (value instanceof Boolean) {
-                    editor.putBoolean(key, (boolean) value).apply();
-                } else if (value instanceof Long) {
-                    editor.putLong(key, (long) value).apply();
-                } else if (value instanceof Integer) {
-                    editor.putLong(key, (int) value).apply();
-                }else{
-                    editor.putString(key, null).apply();
+                if (!(value instanceof String || value instanceof Boolean || value instanceof Long || value instanceof Integer)) {
+                    value = null;
+                }
+                MappedPrefsStore mappedPrefs = getMappedSharedPrefs(context, prefsName);
+                if (mappedPrefs != null) {
+                    mappedPrefs.put(key, value);
+                } else {
+                    WriteBehindPrefs.getInstance(context, prefsName).put(key, value);
                 }
             }
         } catch (Exception e) {
@@ -1178,31 +1303,30 @@ public class GlobalUtils implements GlobalUtilsInterface {
     }
 
     /**
-     * Save Shared Prefs (List)
+     * Save Shared Prefs (List), written together
      * @param context Context
      * @param prefsName String
      * @param hashMap Map of String and Object
      */
     public static void saveSharedPrefsList(Context context, String prefsName, Map<String, Object> hashMap) {
         try {
-            SharedPreferences.Editor editor = initSharedPrefs(context, prefsName).edit();
+            Map<String, Object> values = new HashMap<>();
             for (Map.Entry<String, Object> entry : hashMap.entrySet()) {
                 String key = entry.getKey();
                 Object value = entry.getValue();
                 if (key != null) {
 
-                    if (value instanceof String) {
-                        editor.putString(key, (String) value).apply();
-                    } else if (value instanceof Boolean) {
-                        editor.putBoolean(key, (boolean) value).apply();
-                    } else if (value instanceof Long) {
-                        editor.putLong(key, (long) value).apply();
-                    } else if (value instanceof Integer) {
-                        editor.putLong(key, (int) value).apply();
+                    if (value instanceof String || value instanceof Boolean || value instanceof Long || value instanceof Integer) {
+                        values.put(key, value);
                     }
                 }
             }
-            editor.apply();
+            MappedPrefsStore mappedPrefs = getMappedSharedPrefs(context, prefsName);
+            if (mappedPrefs != null) {
+                mappedPrefs.putAll(values);
+            } else {
+                WriteBehindPrefs.getInstance(context, prefsName).putAll(values);
+            }
         } catch (Exception e) {
             logThis(TAG, "saveSharedPrefsList Exception", e);
         }
@@ -1233,7 +1357,9 @@ public class GlobalUtils implements GlobalUtilsInterface {
      * @return CharSequence Array Adapter
      */
     public static ArrayAdapter<CharSequence> customSpinnerAdapter(Context context, int array) {
-        ArrayAdapter<CharSequence> adapter = ArrayAdapter.createFromResource(context, array, android.R.layout.simple_spinner_item);
+        // the adapter gets its own modifiable copy, it can be sorted or changed
+        ArrayAdapter<CharSequence> adapter = new ArrayAdapter<>(context, android.R.layout.simple_spinner_item,
+                new ArrayList<>(ResourceArrayCache.getInstance().getTextList(context, array)));
         adapter.setDropDownViewResource(android.R.layout.simple_spinner_dropdown_item);
         return adapter;
     }
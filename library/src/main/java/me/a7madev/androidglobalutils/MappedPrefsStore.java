@@ -0,0 +1,650 @@
+package me.a7madev.androidglobalutils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * Key value store kept in an append only log file, mapped in memory. Alternative backend of the
+ * GlobalUtils shared prefs helpers (see GlobalUtils.setMappedSharedPrefsEnabled).
+ * Every put appends one record: crc32, length, type, key and value, so a write costs the record
+ * bytes instead of rewriting the whole file. Opening reads the records once into an in memory index,
+ * a record with a bad checksum ends the log (a write interrupted by a crash).
+ * Removed keys are written as tombstones. When the overwritten records take more space than the
+ * live ones, the log is compacted on the given executor into a new file holding only the live values.
+ * Writes reach the page cache immediately, call sync() to force them to the disk.
+ * Plain Java, no Android classes: the compaction executor and the logger are given when opening.
+ */
+public class MappedPrefsStore {
+
+    public static final String TAG = MappedPrefsStore.class.getSimpleName();
+
+    public static final String FILE_EXTENSION = ".kv";
+
+    private static final int MAGIC = 0x4B564C47;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    // crc and length
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int MAX_RECORD_SIZE = 1 << 24;
+    private static final int INITIAL_CAPACITY = 4096;
+    private static final int MIN_COMPACTION_BYTES = 32 * 1024;
+
+    private static final byte TYPE_TOMBSTONE = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_BOOLEAN = 2;
+    private static final byte TYPE_INT = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_FLOAT = 5;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final Map<String, MappedPrefsStore> instances = new HashMap<>();
+
+    /**
+     * Store messages and errors
+     */
+    public interface Logger {
+
+        /**
+         * Log a message
+         * @param message String
+         * @param error Throwable or null
+         */
+        void log(String message, Throwable error);
+    }
+
+    private final File file;
+    private final Executor compactionExecutor;
+    private final Logger logger;
+    private RandomAccessFile randomAccessFile;
+    private MappedByteBuffer buffer;
+    private int writePosition;
+
+    // values and the size of the record holding them
+    private final Map<String, Object> values = new HashMap<>();
+    private final Map<String, Integer> recordSizes = new HashMap<>();
+    private long deadBytes;
+    private final CRC32 crc32 = new CRC32();
+    private byte[] scratch = new byte[256];
+
+    // keys written while a compaction copies the values
+    private Set<String> compactionChangedKeys;
+    private boolean closed;
+
+    private MappedPrefsStore(File file, Executor compactionExecutor, Logger logger) {
+        this.file = file;
+        this.compactionExecutor = compactionExecutor;
+        this.logger = logger;
+    }
+
+    /**
+     * Open a store file, replaying its log
+     * @param file File, created if missing
+     * @param compactionExecutor Executor running the compactions, or null to compact only in compact()
+     * @param logger Logger or null
+     * @return MappedPrefsStore or null if the file can not be opened
+     */
+    public static MappedPrefsStore open(File file, Executor compactionExecutor, Logger logger) {
+        MappedPrefsStore store = new MappedPrefsStore(file, compactionExecutor, logger);
+        try {
+            store.load();
+            return store;
+        } catch (IOException e) {
+            store.log("open IOException", e);
+            store.closeFile();
+        }
+        return null;
+    }
+
+    /**
+     * Get the shared store of a name in a directory
+     * @param directory Directory, created if missing
+     * @param name Store name, the file is name + FILE_EXTENSION
+     * @param compactionExecutor Executor running the compactions, used if the store is not open yet
+     * @param logger Logger or null, used if the store is not open yet
+     * @return MappedPrefsStore or null if the file can not be opened
+     */
+    public static MappedPrefsStore getInstance(File directory, String name, Executor compactionExecutor, Logger logger) {
+        File file = new File(directory, name + FILE_EXTENSION);
+        synchronized (instances) {
+            MappedPrefsStore store = instances.get(file.getPath());
+            if (store == null || store.isClosed()) {
+                if (!directory.isDirectory() && !directory.mkdirs()) {
+                    if (logger != null) {
+                        logger.log("getInstance: could not create " + directory, null);
+                    }
+                    return null;
+                }
+                store = open(file, compactionExecutor, logger);
+                if (store != null) {
+                    instances.put(file.getPath(), store);
+                }
+            }
+            return store;
+        }
+    }
+
+    public synchronized String getString(String key, String defValue) {
+        Object value = values.get(key);
+        return value != null ? (String) value : defValue;
+    }
+
+    public synchronized boolean getBoolean(String key, boolean defValue) {
+        Object value = values.get(key);
+        return value != null ? (Boolean) value : defValue;
+    }
+
+    public synchronized int getInt(String key, int defValue) {
+        Object value = values.get(key);
+        return value != null ? ((Number) value).intValue() : defValue;
+    }
+
+    public synchronized long getLong(String key, long defValue) {
+        Object value = values.get(key);
+        return value != null ? ((Number) value).longValue() : defValue;
+    }
+
+    public synchronized float getFloat(String key, float defValue) {
+        Object value = values.get(key);
+        return value != null ? (Float) value : defValue;
+    }
+
+    /**
+     * Is there a value for a key
+     * @param key String
+     * @return boolean
+     */
+    public synchronized boolean contains(String key) {
+        return values.containsKey(key);
+    }
+
+    /**
+     * Copy of all the values
+     * @return Map of String and Object
+     */
+    public synchronized Map<String, Object> getAll() {
+        return Collections.unmodifiableMap(new HashMap<>(values));
+    }
+
+    /**
+     * Number of keys
+     * @return int
+     */
+    public synchronized int size() {
+        return values.size();
+    }
+
+    /**
+     * Put a value, appended to the log
+     * @param key String
+     * @param value String, Boolean, Integer, Long or Float, null to remove the key
+     * @return boolean written?
+     */
+    public synchronized boolean put(String key, Object value) {
+        if (key == null || closed) {
+            return false;
+        }
+        if (value != null && value.equals(values.get(key))) {
+            return true;
+        }
+        if (value == null && !values.containsKey(key)) {
+            return true;
+        }
+        try {
+            int recordSize = append(key, value);
+            Integer previousSize = recordSizes.get(key);
+            if (previousSize != null) {
+                deadBytes += previousSize;
+            }
+            if (value != null) {
+                values.put(key, value);
+                recordSizes.put(key, recordSize);
+            } else {
+                values.remove(key);
+                recordSizes.remove(key);
+                // the tombstone itself is only needed until the next compaction
+                deadBytes += recordSize;
+            }
+            if (compactionChangedKeys != null) {
+                compactionChangedKeys.add(key);
+            }
+            scheduleCompaction();
+            return true;
+        } catch (IOException e) {
+            log("put IOException", e);
+        }
+        return false;
+    }
+
+    /**
+     * Put values
+     * @param values Map of String and Object, see put()
+     */
+    public synchronized void putAll(Map<String, Object> values) {
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Remove a value, a tombstone is appended to the log
+     * @param key String
+     * @return boolean written?
+     */
+    public boolean remove(String key) {
+        return put(key, null);
+    }
+
+    /**
+     * Remove all values, truncating the log
+     */
+    public synchronized void clear() {
+        if (closed) {
+            return;
+        }
+        if (compactionChangedKeys != null) {
+            compactionChangedKeys.addAll(values.keySet());
+        }
+        values.clear();
+        recordSizes.clear();
+        try {
+            // a zero length ends the log at its first record, the clear is done even if the truncation is not
+            buffer.putInt(HEADER_SIZE + 4, 0);
+            closeFile();
+            RandomAccessFile truncatedFile = new RandomAccessFile(file, "rw");
+            try {
+                truncatedFile.setLength(HEADER_SIZE);
+            } finally {
+                truncatedFile.close();
+            }
+            load();
+        } catch (IOException e) {
+            log("clear IOException", e);
+            if (buffer == null) {
+                // the log could not be mapped again
+                closed = true;
+            }
+        }
+    }
+
+    /**
+     * Force the written records to the disk
+     */
+    public synchronized void sync() {
+        if (!closed) {
+            buffer.force();
+        }
+    }
+
+    /**
+     * Rewrite the log with the live values only, on the calling thread
+     */
+    public void compact() {
+        Map<String, Object> snapshot;
+        synchronized (this) {
+            if (closed || compactionChangedKeys != null) {
+                return;
+            }
+            snapshot = new HashMap<>(values);
+            compactionChangedKeys = new HashSet<>();
+        }
+
+        File compactFile = new File(file.getPath() + ".compact");
+        MappedPrefsStore compactStore = null;
+        try {
+            // the values are copied without holding the lock, writes made meanwhile are copied after
+            if (compactFile.exists() && !compactFile.delete()) {
+                throw new IOException("could not delete " + compactFile);
+            }
+            compactStore = new MappedPrefsStore(compactFile, null, logger);
+            compactStore.load();
+            for (Map.Entry<String, Object> entry : snapshot.entrySet()) {
+                compactStore.put(entry.getKey(), entry.getValue());
+            }
+            synchronized (this) {
+                if (closed) {
+                    return;
+                }
+                for (String key : compactionChangedKeys) {
+                    compactStore.put(key, values.get(key));
+                }
+                compactStore.buffer.force();
+                compactStore.closeFile();
+                closeFile();
+                boolean renamed = compactFile.renameTo(file);
+                values.clear();
+                recordSizes.clear();
+                // the compacted file, or the old one if it could not be replaced
+                load();
+                if (!renamed) {
+                    log("compact: could not rename " + compactFile, null);
+                }
+            }
+        } catch (IOException e) {
+            log("compact IOException", e);
+            synchronized (this) {
+                if (buffer == null) {
+                    // the log could not be mapped again
+                    closed = true;
+                }
+            }
+            if (compactStore != null) {
+                compactStore.closeFile();
+            }
+            if (!compactFile.delete()) {
+                log("compact: could not delete " + compactFile, null);
+            }
+        } finally {
+            synchronized (this) {
+                compactionChangedKeys = null;
+            }
+        }
+    }
+
+    /**
+     * Size of the log, including overwritten records
+     * @return int bytes
+     */
+    public synchronized int getLogSize() {
+        return writePosition;
+    }
+
+    /**
+     * Bytes of overwritten records and tombstones, freed by the next compaction
+     * @return long bytes
+     */
+    public synchronized long getDeadBytes() {
+        return deadBytes;
+    }
+
+    /**
+     * Close the file, the store can not be used anymore
+     */
+    public synchronized void close() {
+        if (!closed) {
+            closeFile();
+            closed = true;
+        }
+    }
+
+    public synchronized boolean isClosed() {
+        return closed;
+    }
+
+    // map the file and replay the log
+    private void load() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        long length = randomAccessFile.length();
+        if (length > Integer.MAX_VALUE) {
+            throw new IOException("file too large: " + length);
+        }
+        map((int) Math.max(INITIAL_CAPACITY, length));
+        deadBytes = 0;
+
+        if (length < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            if (length >= HEADER_SIZE && buffer.getInt(0) != 0) {
+                log("load: " + file + " is not a store file, it is reset", null);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            for (int i = HEADER_SIZE; i < length; i++) {
+                buffer.put(i, (byte) 0);
+            }
+            writePosition = HEADER_SIZE;
+            return;
+        }
+
+        int position = HEADER_SIZE;
+        try {
+            while (position + RECORD_HEADER_SIZE <= buffer.capacity()) {
+                int crc = buffer.getInt(position);
+                int bodyLength = buffer.getInt(position + 4);
+                int recordSize = RECORD_HEADER_SIZE + bodyLength;
+                if (bodyLength < 3 || bodyLength > MAX_RECORD_SIZE || position + recordSize > buffer.capacity()) {
+                    break;
+                }
+                byte[] body = readBytes(position + RECORD_HEADER_SIZE, bodyLength);
+                crc32.reset();
+                crc32.update(body, 0, bodyLength);
+                if ((int) crc32.getValue() != crc) {
+                    log("load: bad record at " + position + " in " + file, null);
+                    break;
+                }
+                if (!readRecord(body, bodyLength, recordSize)) {
+                    log("load: invalid record at " + position + " in " + file, null);
+                    break;
+                }
+                position += recordSize;
+            }
+        } catch (RuntimeException e) {
+            // a corrupt record ends the log like a bad checksum
+            log("load: corrupt record at " + position + " in " + file, e);
+        }
+        writePosition = position;
+        // drop the invalid tail, so no old record is read back after later appends
+        for (int i = position; i < buffer.capacity(); i++) {
+            if (buffer.get(i) != 0) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    private boolean readRecord(byte[] body, int bodyLength, int recordSize) {
+        byte type = body[0];
+        int keyLength = ((body[1] & 0xFF) << 8) | (body[2] & 0xFF);
+        int valueOffset = 3 + keyLength;
+        if (valueOffset > bodyLength) {
+            return false;
+        }
+        String key = new String(body, 3, keyLength, UTF_8);
+        int valueLength = bodyLength - valueOffset;
+        Object value;
+        switch (type) {
+            case TYPE_TOMBSTONE:
+                if (valueLength != 0) {
+                    return false;
+                }
+                value = null;
+                break;
+            case TYPE_STRING:
+                value = new String(body, valueOffset, valueLength, UTF_8);
+                break;
+            case TYPE_BOOLEAN:
+                if (valueLength != 1) {
+                    return false;
+                }
+                value = body[valueOffset] != 0;
+                break;
+            case TYPE_INT:
+                if (valueLength != 4) {
+                    return false;
+                }
+                value = readInt(body, valueOffset);
+                break;
+            case TYPE_LONG:
+                if (valueLength != 8) {
+                    return false;
+                }
+                value = ((long) readInt(body, valueOffset) << 32) | (readInt(body, valueOffset + 4) & 0xFFFFFFFFL);
+                break;
+            case TYPE_FLOAT:
+                if (valueLength != 4) {
+                    return false;
+                }
+                value = Float.intBitsToFloat(readInt(body, valueOffset));
+                break;
+            default:
+                return false;
+        }
+        Integer previousSize = recordSizes.get(key);
+        if (previousSize != null) {
+            deadBytes += previousSize;
+        }
+        if (value != null) {
+            values.put(key, value);
+            recordSizes.put(key, recordSize);
+        } else {
+            values.remove(key);
+            recordSizes.remove(key);
+            deadBytes += recordSize;
+        }
+        return true;
+    }
+
+    // append a record, returns its size
+    private int append(String key, Object value) throws IOException {
+        byte[] keyBytes = key.getBytes(UTF_8);
+        if (keyBytes.length > 0xFFFF) {
+            throw new IllegalArgumentException("Key too long: " + key);
+        }
+        byte type;
+        byte[] stringBytes = null;
+        int valueLength;
+        if (value == null) {
+            type = TYPE_TOMBSTONE;
+            valueLength = 0;
+        } else if (value instanceof String) {
+            type = TYPE_STRING;
+            stringBytes = ((String) value).getBytes(UTF_8);
+            valueLength = stringBytes.length;
+        } else if (value instanceof Boolean) {
+            type = TYPE_BOOLEAN;
+            valueLength = 1;
+        } else if (value instanceof Integer) {
+            type = TYPE_INT;
+            valueLength = 4;
+        } else if (value instanceof Long) {
+            type = TYPE_LONG;
+            valueLength = 8;
+        } else if (value instanceof Float) {
+            type = TYPE_FLOAT;
+            valueLength = 4;
+        } else {
+            throw new IllegalArgumentException("Unsupported value type: " + value.getClass().getName());
+        }
+
+        int bodyLength = 3 + keyBytes.length + valueLength;
+        if (bodyLength > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Value too large for key: " + key);
+        }
+        if (scratch.length < bodyLength) {
+            scratch = new byte[Math.max(bodyLength, scratch.length * 2)];
+        }
+        byte[] body = scratch;
+        body[0] = type;
+        body[1] = (byte) (keyBytes.length >>> 8);
+        body[2] = (byte) keyBytes.length;
+        System.arraycopy(keyBytes, 0, body, 3, keyBytes.length);
+        int valueOffset = 3 + keyBytes.length;
+        if (value instanceof String) {
+            System.arraycopy(stringBytes, 0, body, valueOffset, valueLength);
+        } else if (value instanceof Boolean) {
+            body[valueOffset] = (byte) ((Boolean) value ? 1 : 0);
+        } else if (value instanceof Integer) {
+            writeInt(body, valueOffset, (Integer) value);
+        } else if (value instanceof Long) {
+            long longValue = (Long) value;
+            writeInt(body, valueOffset, (int) (longValue >>> 32));
+            writeInt(body, valueOffset + 4, (int) longValue);
+        } else if (value instanceof Float) {
+            writeInt(body, valueOffset, Float.floatToIntBits((Float) value));
+        }
+
+        int recordSize = RECORD_HEADER_SIZE + bodyLength;
+        // keep zeroed bytes after the record, they end the log
+        ensureCapacity(writePosition + recordSize + RECORD_HEADER_SIZE);
+        crc32.reset();
+        crc32.update(body, 0, bodyLength);
+        // the length is written last, a record cut by a process crash is not read back
+        buffer.position(writePosition + RECORD_HEADER_SIZE);
+        buffer.put(body, 0, bodyLength);
+        buffer.putInt(writePosition, (int) crc32.getValue());
+        buffer.putInt(writePosition + 4, bodyLength);
+        writePosition += recordSize;
+        return recordSize;
+    }
+
+    private void ensureCapacity(int capacity) throws IOException {
+        if (capacity <= buffer.capacity()) {
+            return;
+        }
+        int newCapacity = buffer.capacity();
+        while (newCapacity < capacity) {
+            newCapacity *= 2;
+        }
+        map(newCapacity);
+    }
+
+    private void map(int capacity) throws IOException {
+        // mapping past the end of the file extends it with zeros
+        buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private void scheduleCompaction() {
+        if (compactionExecutor == null || compactionChangedKeys != null
+                || deadBytes < MIN_COMPACTION_BYTES || deadBytes < writePosition - deadBytes) {
+            return;
+        }
+        try {
+            compactionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    compact();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            log("scheduleCompaction RejectedExecutionException", e);
+        }
+    }
+
+    private void closeFile() {
+        buffer = null;
+        if (randomAccessFile != null) {
+            try {
+                randomAccessFile.close();
+            } catch (IOException e) {
+                log("closeFile IOException", e);
+            }
+            randomAccessFile = null;
+        }
+    }
+
+    private void log(String message, Throwable error) {
+        if (logger != null) {
+            logger.log(message, error);
+        }
+    }
+
+    private byte[] readBytes(int position, int length) {
+        if (scratch.length < length) {
+            scratch = new byte[Math.max(length, scratch.length * 2)];
+        }
+        buffer.position(position);
+        buffer.get(scratch, 0, length);
+        return scratch;
+    }
+
+    private static int readInt(byte[] bytes, int offset) {
+        return ((bytes[offset] & 0xFF) << 24) | ((bytes[offset + 1] & 0xFF) << 16)
+                | ((bytes[offset + 2] & 0xFF) << 8) | (bytes[offset + 3] & 0xFF);
+    }
+
+    private static void writeInt(byte[] bytes, int offset, int value) {
+        bytes[offset] = (byte) (value >>> 24);
+        bytes[offset + 1] = (byte) (value >>> 16);
+        bytes[offset + 2] = (byte) (value >>> 8);
+        bytes[offset + 3] = (byte) value;
+    }
+}
@@ -0,0 +1,257 @@
+package me.a7madev.androidglobalutils;
+
+import android.content.ContentResolver;
+import android.content.ContentUris;
+import android.database.Cursor;
+import android.net.Uri;
+import android.os.Build;
+import android.os.Bundle;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Pages through a MediaStore collection, newest first.
+ * Pages are requested with keyset pagination: every query continues from the
+ * (date modified, id) of the last row instead of an OFFSET, so loading page 1000 costs the same as page 1.
+ * Rows without a date modified come last, paged by id.
+ * Only a minimal projection is queried and rows are read into lightweight MediaItem records.
+ * Works with any provider exposing the MediaStore columns, so it can be pointed at a local test provider.
+ */
+public class MediaGallery {
+
+    public static final String TAG = MediaGallery.class.getSimpleName();
+
+    public static final int DEFAULT_PAGE_SIZE = 200;
+
+    // ContentResolver.QUERY_ARG_SQL_LIMIT, required on Android 11+ where LIMIT is rejected in the sort order.
+    // MediaStore ignores it before Android 11, the LIMIT then stays in the sort order.
+    private static final String QUERY_ARG_SQL_LIMIT = "android:query-arg-sql-limit";
+    private static final int SDK_QUERY_ARG_SQL_LIMIT = 30;
+
+    private static final String[] PROJECTION = {
+            BaseColumns._ID,
+            MediaStore.MediaColumns.DATA,
+            MediaStore.MediaColumns.MIME_TYPE,
+            MediaStore.MediaColumns.SIZE,
+            MediaStore.MediaColumns.DATE_MODIFIED
+    };
+    private static final String SORT_ORDER = MediaStore.MediaColumns.DATE_MODIFIED + " DESC, " + BaseColumns._ID + " DESC";
+    private static final String KEYSET_SELECTION = "(" + MediaStore.MediaColumns.DATE_MODIFIED + " < ? OR ("
+            + MediaStore.MediaColumns.DATE_MODIFIED + " = ? AND " + BaseColumns._ID + " < ?))";
+    // a NULL date never matches the keyset selection, those rows are paged separately
+    private static final String DATED_SELECTION = MediaStore.MediaColumns.DATE_MODIFIED + " IS NOT NULL";
+    private static final String UNDATED_SELECTION = MediaStore.MediaColumns.DATE_MODIFIED + " IS NULL";
+    private static final String UNDATED_SORT_ORDER = BaseColumns._ID + " DESC";
+    private static final String UNDATED_KEYSET_SELECTION = BaseColumns._ID + " < ?";
+
+    /**
+     * Gallery row
+     */
+    public static class MediaItem {
+
+        public final long id;
+        public final String path;
+        public final String mimeType;
+        public final long size;
+        // seconds since epoch, as stored by MediaStore, 0 if not set
+        public final long dateModified;
+        private final Uri collectionUri;
+
+        private MediaItem(Uri collectionUri, long id, String path, String mimeType, long size, long dateModified) {
+            this.collectionUri = collectionUri;
+            this.id = id;
+            this.path = path;
+            this.mimeType = mimeType;
+            this.size = size;
+            this.dateModified = dateModified;
+        }
+
+        public Uri getUri() {
+            return ContentUris.withAppendedId(collectionUri, id);
+        }
+
+        public boolean isImage() {
+            return mimeType != null && mimeType.startsWith("image");
+        }
+
+        public boolean isVideo() {
+            return mimeType != null && mimeType.startsWith("video");
+        }
+    }
+
+    private final ContentResolver contentResolver;
+    private final Uri collectionUri;
+    private String selection;
+    private String[] selectionArgs;
+    private int pageSize = DEFAULT_PAGE_SIZE;
+
+    // keyset of the last loaded row
+    private boolean hasMore = true;
+    private boolean started;
+    private boolean undated;
+    private long lastDateModified;
+    private long lastId;
+
+    // column indices, resolved from the first cursor
+    private int idColumn = -1;
+    private int pathColumn;
+    private int mimeTypeColumn;
+    private int sizeColumn;
+    private int dateModifiedColumn;
+
+    /**
+     * Media Gallery
+     * @param contentResolver ContentResolver
+     * @param collectionUri Collection uri, for example MediaStore.Images.Media.EXTERNAL_CONTENT_URI
+     */
+    public MediaGallery(ContentResolver contentResolver, Uri collectionUri) {
+        this.contentResolver = contentResolver;
+        this.collectionUri = collectionUri;
+    }
+
+    /**
+     * Set an extra filter, combined with the paging condition
+     * @param selection SQL selection or null
+     * @param selectionArgs Selection arguments or null
+     * @return MediaGallery
+     */
+    public MediaGallery setSelection(String selection, String[] selectionArgs) {
+        this.selection = selection;
+        this.selectionArgs = selectionArgs;
+        return this;
+    }
+
+    /**
+     * Set rows count per page
+     * @param pageSize int
+     * @return MediaGallery
+     */
+    public MediaGallery setPageSize(int pageSize) {
+        this.pageSize = Math.max(1, pageSize);
+        return this;
+    }
+
+    /**
+     * Are there more pages to load
+     * @return boolean
+     */
+    public synchronized boolean hasMore() {
+        return hasMore;
+    }
+
+    /**
+     * Start again from the newest item
+     */
+    public synchronized void reset() {
+        hasMore = true;
+        started = false;
+        undated = false;
+        lastDateModified = 0;
+        lastId = 0;
+    }
+
+    /**
+     * Load the next page, newest items first
+     * @return List of MediaItem, empty when there are no more items
+     */
+    @WorkerThread
+    public synchronized List<MediaItem> loadNextPage() {
+        List<MediaItem> items = new ArrayList<>();
+        while (hasMore && items.size() < pageSize) {
+            int requested = pageSize - items.size();
+            int read = loadRows(items, requested);
+            if (read < requested) {
+                if (undated || read < 0) {
+                    hasMore = false;
+                } else {
+                    // the dated rows are done, continue with the undated ones in the same page
+                    undated = true;
+                    started = false;
+                }
+            }
+        }
+        return items;
+    }
+
+    // read up to limit rows after the keyset into items, -1 if the query failed
+    private int loadRows(List<MediaItem> items, int limit) {
+        StringBuilder where = new StringBuilder();
+        List<String> whereArgs = new ArrayList<>();
+        if (selection != null && !selection.isEmpty()) {
+            where.append('(').append(selection).append(") AND ");
+            if (selectionArgs != null) {
+                whereArgs.addAll(Arrays.asList(selectionArgs));
+            }
+        }
+        if (undated) {
+            where.append(UNDATED_SELECTION);
+            if (started) {
+                where.append(" AND ").append(UNDATED_KEYSET_SELECTION);
+                whereArgs.add(String.valueOf(lastId));
+            }
+        } else {
+            where.append(DATED_SELECTION);
+            if (started) {
+                where.append(" AND ").append(KEYSET_SELECTION);
+                whereArgs.add(String.valueOf(lastDateModified));
+                whereArgs.add(String.valueOf(lastDateModified));
+                whereArgs.add(String.valueOf(lastId));
+            }
+        }
+
+        int read = 0;
+        Cursor cursor = null;
+        try {
+            cursor = query(where.toString(), whereArgs.toArray(new String[whereArgs.size()]),
+                    undated ? UNDATED_SORT_ORDER : SORT_ORDER, limit);
+            if (cursor == null) {
+                return -1;
+            }
+            if (idColumn == -1) {
+                pathColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATA);
+                mimeTypeColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.MIME_TYPE);
+                sizeColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.SIZE);
+                dateModifiedColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATE_MODIFIED);
+                idColumn = cursor.getColumnIndexOrThrow(BaseColumns._ID);
+            }
+            // providers ignoring the limit still return rows lazily, stop reading at the limit
+            while (read < limit && cursor.moveToNext()) {
+                MediaItem item = new MediaItem(collectionUri, cursor.getLong(idColumn), cursor.getString(pathColumn),
+                        cursor.getString(mimeTypeColumn), cursor.getLong(sizeColumn), cursor.getLong(dateModifiedColumn));
+                items.add(item);
+                lastDateModified = item.dateModified;
+                lastId = item.id;
+                started = true;
+                read++;
+            }
+        } catch (IllegalArgumentException | SecurityException e) {
+            logThis(TAG, "loadNextPage Exception", e);
+            return -1;
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return read;
+    }
+
+    private Cursor query(String where, String[] whereArgs, String sortOrder, int limit) {
+        if (Build.VERSION.SDK_INT >= SDK_QUERY_ARG_SQL_LIMIT) {
+            Bundle queryArgs = new Bundle();
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SELECTION, where);
+            queryArgs.putStringArray(ContentResolver.QUERY_ARG_SQL_SELECTION_ARGS, whereArgs);
+            queryArgs.putString(ContentResolver.QUERY_ARG_SQL_SORT_ORDER, sortOrder);
+            queryArgs.putString(QUERY_ARG_SQL_LIMIT, String.valueOf(limit));
+            queryArgs.putInt(ContentResolver.QUERY_ARG_LIMIT, limit);
+            return contentResolver.query(collectionUri, PROJECTION, queryArgs, null);
+        }
+        return contentResolver.query(collectionUri, PROJECTION, where, whereArgs, sortOrder + " LIMIT " + limit);
+    }
+}
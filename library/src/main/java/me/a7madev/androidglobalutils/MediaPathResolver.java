@@ -0,0 +1,232 @@
+package me.a7madev.androidglobalutils;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.BaseColumns;
+import android.provider.MediaStore;
+import android.support.v4.util.LruCache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Resolves content uris to file paths in batches.
+ * MediaStore uris ending with a row id are grouped by their collection (table path) and every
+ * group is resolved with a few "_id IN (...)" queries instead of one query per uri. Uris of other
+ * providers, and uris of a batch the provider refused, are queried one by one.
+ * Resolved paths are kept in a thread safe LRU cache.
+ */
+public class MediaPathResolver {
+
+    public static final String TAG = MediaPathResolver.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_SIZE = 1024;
+
+    // stays well below the SQLite limit of 999 bound arguments per statement
+    private static final int MAX_IDS_PER_QUERY = 500;
+
+    private static final String[] ID_PATH_PROJECTION = {BaseColumns._ID, MediaStore.MediaColumns.DATA};
+    private static final String[] PATH_PROJECTION = {MediaStore.MediaColumns.DATA};
+
+    private static MediaPathResolver instance;
+
+    private final LruCache<String, String> pathCache;
+
+    /**
+     * Media Path Resolver
+     * @param maxSize maximum cached paths count
+     */
+    public MediaPathResolver(int maxSize) {
+        pathCache = new LruCache<>(Math.max(1, maxSize));
+    }
+
+    /**
+     * Get shared instance
+     * @return MediaPathResolver
+     */
+    public static synchronized MediaPathResolver getInstance() {
+        if (instance == null) {
+            instance = new MediaPathResolver(DEFAULT_MAX_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Get the file path of a uri
+     * @param context Context
+     * @param uri File or content uri
+     * @return String path or null
+     */
+    public String getPath(Context context, Uri uri) {
+        if (uri == null) {
+            return null;
+        }
+        return getPaths(context, Collections.singletonList(uri)).get(uri);
+    }
+
+    /**
+     * Get the file paths of a list of uris
+     * @param context Context
+     * @param uris File or content uris
+     * @return Map of every uri and its path (null if not resolved), in the same order as the list
+     */
+    public Map<Uri, String> getPaths(Context context, Collection<Uri> uris) {
+        Map<Uri, String> paths = new LinkedHashMap<>();
+        if (uris == null) {
+            return paths;
+        }
+
+        // collection uri string -> row id -> uris with this id
+        Map<String, Map<String, List<Uri>>> groups = new LinkedHashMap<>();
+        List<Uri> singleUris = new ArrayList<>();
+        for (Uri uri : uris) {
+            if (uri == null || paths.containsKey(uri)) {
+                continue;
+            }
+            String uriString = uri.toString();
+            String path = pathCache.get(uriString);
+            if (path != null || ContentResolver.SCHEME_FILE.equals(uri.getScheme())) {
+                paths.put(uri, path != null ? path : uri.getPath());
+                continue;
+            }
+            paths.put(uri, null);
+
+            String id = uri.getLastPathSegment();
+            // other providers do not necessarily support an _id selection on the parent uri
+            if (ContentResolver.SCHEME_CONTENT.equals(uri.getScheme()) && MediaStore.AUTHORITY.equals(uri.getAuthority())
+                    && isRowId(id) && uriString.endsWith("/" + id)) {
+                String collectionUri = uriString.substring(0, uriString.length() - id.length() - 1);
+                Map<String, List<Uri>> group = groups.get(collectionUri);
+                if (group == null) {
+                    group = new LinkedHashMap<>();
+                    groups.put(collectionUri, group);
+                }
+                List<Uri> idUris = group.get(id);
+                if (idUris == null) {
+                    idUris = new ArrayList<>(1);
+                    group.put(id, idUris);
+                }
+                idUris.add(uri);
+            } else {
+                singleUris.add(uri);
+            }
+        }
+
+        if (context == null) {
+            return paths;
+        }
+        ContentResolver contentResolver = context.getContentResolver();
+        for (Map.Entry<String, Map<String, List<Uri>>> group : groups.entrySet()) {
+            queryCollection(contentResolver, Uri.parse(group.getKey()), group.getValue(), paths);
+        }
+        for (Uri uri : singleUris) {
+            String path = querySingle(contentResolver, uri);
+            if (path != null) {
+                pathCache.put(uri.toString(), path);
+                paths.put(uri, path);
+            }
+        }
+        return paths;
+    }
+
+    /**
+     * Clear cached paths
+     */
+    public void clear() {
+        pathCache.evictAll();
+    }
+
+    private void queryCollection(ContentResolver contentResolver, Uri collectionUri, Map<String, List<Uri>> idUris, Map<Uri, String> paths) {
+        List<String> ids = new ArrayList<>(idUris.keySet());
+        for (int start = 0; start < ids.size(); start += MAX_IDS_PER_QUERY) {
+            List<String> chunk = ids.subList(start, Math.min(ids.size(), start + MAX_IDS_PER_QUERY));
+            StringBuilder selection = new StringBuilder(BaseColumns._ID).append(" IN (");
+            for (int i = 0; i < chunk.size(); i++) {
+                selection.append(i == 0 ? "?" : ",?");
+            }
+            selection.append(')');
+
+            Cursor cursor = null;
+            boolean queried = false;
+            try {
+                cursor = contentResolver.query(collectionUri, ID_PATH_PROJECTION, selection.toString(),
+                        chunk.toArray(new String[chunk.size()]), null);
+                if (cursor != null) {
+                    int idColumn = cursor.getColumnIndexOrThrow(BaseColumns._ID);
+                    int pathColumn = cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATA);
+                    while (cursor.moveToNext()) {
+                        String path = cursor.getString(pathColumn);
+                        List<Uri> uris = idUris.get(String.valueOf(cursor.getLong(idColumn)));
+                        if (path == null || uris == null) {
+                            continue;
+                        }
+                        for (Uri uri : uris) {
+                            pathCache.put(uri.toString(), path);
+                            paths.put(uri, path);
+                        }
+                    }
+                    queried = true;
+                }
+            } catch (IllegalArgumentException | SecurityException | UnsupportedOperationException e) {
+                logThis(TAG, "queryCollection Exception", e);
+            } finally {
+                if (cursor != null) {
+                    cursor.close();
+                }
+            }
+            if (!queried) {
+                // the batch query failed, every uri may still be readable on its own
+                querySingles(contentResolver, chunk, idUris, paths);
+            }
+        }
+    }
+
+    private void querySingles(ContentResolver contentResolver, List<String> ids, Map<String, List<Uri>> idUris, Map<Uri, String> paths) {
+        for (String id : ids) {
+            for (Uri uri : idUris.get(id)) {
+                String path = querySingle(contentResolver, uri);
+                if (path != null) {
+                    pathCache.put(uri.toString(), path);
+                    paths.put(uri, path);
+                }
+            }
+        }
+    }
+
+    private static String querySingle(ContentResolver contentResolver, Uri uri) {
+        Cursor cursor = null;
+        try {
+            cursor = contentResolver.query(uri, PATH_PROJECTION, null, null, null);
+            if (cursor != null && cursor.moveToFirst()) {
+                return cursor.getString(cursor.getColumnIndexOrThrow(MediaStore.MediaColumns.DATA));
+            }
+        } catch (IllegalArgumentException | SecurityException | UnsupportedOperationException e) {
+            logThis(TAG, "querySingle Exception", e);
+        } finally {
+            if (cursor != null) {
+                cursor.close();
+            }
+        }
+        return null;
+    }
+
+    private static boolean isRowId(String segment) {
+        if (segment == null || segment.isEmpty() || segment.length() > 18) {
+            return false;
+        }
+        for (int i = 0; i < segment.length(); i++) {
+            if (segment.charAt(i) < '0' || segment.charAt(i) > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,251 @@
+package me.a7madev.androidglobalutils;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Identifies image and video files from their first bytes (magic numbers) instead of their extension.
+ * Headers are read through a FileChannel into a small pool of direct buffers.
+ */
+public class MediaTypeSniffer {
+
+    public static final String TAG = MediaTypeSniffer.class.getSimpleName();
+
+    /**
+     * Maximum number of bytes read from every file
+     */
+    public static final int HEADER_SIZE = 64;
+
+    private static final int MAX_POOLED_BUFFERS = 8;
+    private static final int BATCH_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private static final byte[] PNG_SIGNATURE = {(byte) 0x89, 'P', 'N', 'G', '\r', '\n', 0x1A, '\n'};
+    private static final byte[] GIF_SIGNATURE = {'G', 'I', 'F', '8'};
+    private static final byte[] RIFF_SIGNATURE = {'R', 'I', 'F', 'F'};
+    private static final byte[] WEBP_SIGNATURE = {'W', 'E', 'B', 'P'};
+    private static final byte[] FTYP_SIGNATURE = {'f', 't', 'y', 'p'};
+    private static final byte[] EBML_SIGNATURE = {0x1A, 0x45, (byte) 0xDF, (byte) 0xA3};
+    private static final byte[] WEBM_DOC_TYPE = {'w', 'e', 'b', 'm'};
+    private static final byte[][] HEIF_BRANDS = {
+            {'h', 'e', 'i', 'c'}, {'h', 'e', 'i', 'x'}, {'h', 'e', 'v', 'c'}, {'h', 'e', 'v', 'x'},
+            {'h', 'e', 'i', 'm'}, {'h', 'e', 'i', 's'}, {'m', 'i', 'f', '1'}, {'m', 's', 'f', '1'},
+            {'a', 'v', 'i', 'f'}
+    };
+    private static final byte[] THREE_GP_BRAND = {'3', 'g', 'p'};
+    private static final byte[] THREE_G2_BRAND = {'3', 'g', '2'};
+    // major brands of video files, audio only brands (M4A, M4B, M4P) are not listed
+    private static final byte[][] VIDEO_BRANDS = toBrands(
+            "isom", "iso2", "iso3", "iso4", "iso5", "iso6", "mp41", "mp42", "mp71", "avc1", "dash",
+            "M4V ", "M4VH", "M4VP", "qt  ", "mqt ", "mmp4", "f4v ", "MSNV", "XAVC",
+            "NDSC", "NDSH", "NDSM", "NDSP", "NDSS", "NDXC", "NDXH", "NDXM", "NDXP", "NDXS");
+
+    private static final ConcurrentLinkedQueue<ByteBuffer> bufferPool = new ConcurrentLinkedQueue<>();
+    private static ExecutorService executor;
+
+    public enum MediaFormat {
+        JPEG(true), PNG(true), GIF(true), WEBP(true), HEIF(true),
+        MP4(false), THREE_GP(false), WEBM(false), MKV(false),
+        UNKNOWN(false);
+
+        private final boolean image;
+
+        MediaFormat(boolean image) {
+            this.image = image;
+        }
+
+        public boolean isImage() {
+            return image;
+        }
+
+        public boolean isVideo() {
+            return !image && this != UNKNOWN;
+        }
+    }
+
+    /**
+     * Identify a file from its header
+     * @param file File
+     * @return MediaFormat, UNKNOWN if the file can not be read or is not a known media format
+     */
+    public static MediaFormat sniff(File file) {
+        if (file == null || !file.isFile()) {
+            return MediaFormat.UNKNOWN;
+        }
+        ByteBuffer header = obtainBuffer();
+        FileInputStream inputStream = null;
+        try {
+            inputStream = new FileInputStream(file);
+            FileChannel channel = inputStream.getChannel();
+            while (header.hasRemaining() && channel.read(header) > 0) {
+                // keep reading until the header is full or the file ends
+            }
+            header.flip();
+            return sniff(header);
+        } catch (IOException e) {
+            logThis(TAG, "sniff IOException", e);
+        } finally {
+            GlobalFileUtils.closeQuietly(inputStream);
+            releaseBuffer(header);
+        }
+        return MediaFormat.UNKNOWN;
+    }
+
+    /**
+     * Identify a header, from its position up to its limit. The buffer position is not changed.
+     * @param header File header, at least the first 32 bytes for video formats
+     * @return MediaFormat
+     */
+    public static MediaFormat sniff(ByteBuffer header) {
+        int offset = header.position();
+        int length = header.remaining();
+
+        if (length >= 3 && (header.get(offset) & 0xFF) == 0xFF && (header.get(offset + 1) & 0xFF) == 0xD8
+                && (header.get(offset + 2) & 0xFF) == 0xFF) {
+            return MediaFormat.JPEG;
+        }
+        if (startsWith(header, offset, length, 0, PNG_SIGNATURE)) {
+            return MediaFormat.PNG;
+        }
+        if (startsWith(header, offset, length, 0, GIF_SIGNATURE) && length >= 6
+                && (header.get(offset + 4) == '7' || header.get(offset + 4) == '9') && header.get(offset + 5) == 'a') {
+            return MediaFormat.GIF;
+        }
+        if (startsWith(header, offset, length, 0, RIFF_SIGNATURE) && startsWith(header, offset, length, 8, WEBP_SIGNATURE)) {
+            return MediaFormat.WEBP;
+        }
+        if (startsWith(header, offset, length, 4, FTYP_SIGNATURE) && length >= 12) {
+            for (byte[] brand : HEIF_BRANDS) {
+                if (startsWith(header, offset, length, 8, brand)) {
+                    return MediaFormat.HEIF;
+                }
+            }
+            if (startsWith(header, offset, length, 8, THREE_GP_BRAND) || startsWith(header, offset, length, 8, THREE_G2_BRAND)) {
+                return MediaFormat.THREE_GP;
+            }
+            for (byte[] brand : VIDEO_BRANDS) {
+                if (startsWith(header, offset, length, 8, brand)) {
+                    return MediaFormat.MP4;
+                }
+            }
+            return MediaFormat.UNKNOWN;
+        }
+        if (startsWith(header, offset, length, 0, EBML_SIGNATURE)) {
+            // the EBML DocType element is near the start of the header: "webm" or "matroska"
+            for (int i = EBML_SIGNATURE.length; i <= length - WEBM_DOC_TYPE.length; i++) {
+                if (startsWith(header, offset, length, i, WEBM_DOC_TYPE)) {
+                    return MediaFormat.WEBM;
+                }
+            }
+            return MediaFormat.MKV;
+        }
+        return MediaFormat.UNKNOWN;
+    }
+
+    /**
+     * Identify a list of files on a worker pool, waiting for the result
+     * @param files Files list
+     * @return Map of every file and its MediaFormat, in the same order as the list
+     */
+    public static Map<File, MediaFormat> sniff(final List<File> files) {
+        Map<File, MediaFormat> formats = new LinkedHashMap<>();
+        if (files == null || files.isEmpty()) {
+            return formats;
+        }
+
+        // split the list into a few chunks per thread instead of a task per file
+        int chunksCount = Math.min(files.size(), BATCH_THREADS * 4);
+        int chunkSize = (files.size() + chunksCount - 1) / chunksCount;
+        List<Future<MediaFormat[]>> futures = new ArrayList<>(chunksCount);
+        for (int start = 0; start < files.size(); start += chunkSize) {
+            final List<File> chunk = files.subList(start, Math.min(files.size(), start + chunkSize));
+            futures.add(getExecutor().submit(new Callable<MediaFormat[]>() {
+                @Override
+                public MediaFormat[] call() {
+                    MediaFormat[] chunkFormats = new MediaFormat[chunk.size()];
+                    for (int i = 0; i < chunkFormats.length; i++) {
+                        chunkFormats[i] = sniff(chunk.get(i));
+                    }
+                    return chunkFormats;
+                }
+            }));
+        }
+
+        int index = 0;
+        for (Future<MediaFormat[]> future : futures) {
+            MediaFormat[] chunkFormats;
+            try {
+                chunkFormats = future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return formats;
+            } catch (ExecutionException e) {
+                logThis(TAG, "sniff ExecutionException", e);
+                chunkFormats = new MediaFormat[Math.min(chunkSize, files.size() - index)];
+            }
+            for (MediaFormat format : chunkFormats) {
+                formats.put(files.get(index++), format != null ? format : MediaFormat.UNKNOWN);
+            }
+        }
+        return formats;
+    }
+
+    private static synchronized ExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newFixedThreadPool(BATCH_THREADS, new WorkerThreadFactory(TAG));
+        }
+        return executor;
+    }
+
+    private static byte[][] toBrands(String... names) {
+        byte[][] brands = new byte[names.length][];
+        for (int i = 0; i < names.length; i++) {
+            brands[i] = new byte[names[i].length()];
+            for (int j = 0; j < brands[i].length; j++) {
+                brands[i][j] = (byte) names[i].charAt(j);
+            }
+        }
+        return brands;
+    }
+
+    private static boolean startsWith(ByteBuffer header, int offset, int length, int index, byte[] signature) {
+        if (index + signature.length > length) {
+            return false;
+        }
+        for (int i = 0; i < signature.length; i++) {
+            if (header.get(offset + index + i) != signature[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static ByteBuffer obtainBuffer() {
+        ByteBuffer buffer = bufferPool.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(HEADER_SIZE);
+        }
+        buffer.clear();
+        return buffer;
+    }
+
+    private static void releaseBuffer(ByteBuffer buffer) {
+        if (bufferPool.size() < MAX_POOLED_BUFFERS) {
+            bufferPool.offer(buffer);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package me.a7madev.androidglobalutils;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.v4.util.LruCache;
+import android.webkit.MimeTypeMap;
+
+import java.util.Locale;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Thread safe, size bounded LRU cache of mime types.
+ * Extension lookups are served from MimeTypeMap and content uri lookups from the ContentResolver,
+ * unknown extensions are cached too so misses are not repeated. A uri without a type is not
+ * cached: its provider may not be ready yet, or the content still pending.
+ */
+public class MimeTypeCache {
+
+    public static final String TAG = MimeTypeCache.class.getSimpleName();
+
+    public static final int DEFAULT_MAX_SIZE = 256;
+
+    // cached for extensions without a mime type, LruCache does not accept null values
+    private static final String NO_MIME_TYPE = "";
+
+    private static MimeTypeCache instance;
+
+    private final LruCache<String, String> extensionCache;
+    private final LruCache<String, String> uriCache;
+
+    /**
+     * Mime Type Cache
+     * @param maxSize maximum entries count for each of the extension and uri caches
+     */
+    public MimeTypeCache(int maxSize) {
+        extensionCache = new LruCache<>(Math.max(1, maxSize));
+        uriCache = new LruCache<>(Math.max(1, maxSize));
+    }
+
+    /**
+     * Get the shared cache used by GlobalFileUtils and GlobalMediaUtils
+     * @return MimeTypeCache
+     */
+    public static synchronized MimeTypeCache getInstance() {
+        if (instance == null) {
+            instance = new MimeTypeCache(DEFAULT_MAX_SIZE);
+        }
+        return instance;
+    }
+
+    /**
+     * Get mime type by file extension
+     * @param extension File extension without the dot: jpg, mp4
+     * @return Mime type string or null
+     */
+    public String getMimeTypeFromExtension(String extension) {
+        if (extension == null || extension.isEmpty()) {
+            return null;
+        }
+        String key = extension.toLowerCase(Locale.US);
+        String mimeType = extensionCache.get(key);
+        if (mimeType == null) {
+            mimeType = MimeTypeMap.getSingleton().getMimeTypeFromExtension(key);
+            extensionCache.put(key, mimeType != null ? mimeType : NO_MIME_TYPE);
+        }
+        return toMimeType(mimeType);
+    }
+
+    /**
+     * Get mime type of a uri from the content resolver
+     * @param context  The context to use. Use application or activity context
+     * @param uri File uri (content://)
+     * @return Mime type string or null
+     */
+    public String getMimeTypeFromURI(Context context, Uri uri) {
+        if (context == null || uri == null) {
+            return null;
+        }
+        String key = uri.toString();
+        String mimeType = uriCache.get(key);
+        if (mimeType == null) {
+            try {
+                mimeType = context.getContentResolver().getType(uri);
+            } catch (Exception e) {
+                logThis(TAG, "getMimeTypeFromURI Exception", e);
+            }
+            if (mimeType != null && !mimeType.isEmpty()) {
+                uriCache.put(key, mimeType);
+            }
+        }
+        return toMimeType(mimeType);
+    }
+
+    /**
+     * Set maximum entries count, evicting the least recently used entries if needed
+     * @param maxSize maximum entries count for each of the extension and uri caches
+     */
+    public void setMaxSize(int maxSize) {
+        extensionCache.resize(Math.max(1, maxSize));
+        uriCache.resize(Math.max(1, maxSize));
+    }
+
+    /**
+     * Remove all cached mime types
+     */
+    public void clear() {
+        extensionCache.evictAll();
+        uriCache.evictAll();
+    }
+
+    /**
+     * Number of lookups served from the cache
+     * @return int
+     */
+    public int hitCount() {
+        return extensionCache.hitCount() + uriCache.hitCount();
+    }
+
+    /**
+     * Number of lookups resolved by MimeTypeMap or the content resolver
+     * @return int
+     */
+    public int missCount() {
+        return extensionCache.missCount() + uriCache.missCount();
+    }
+
+    private static String toMimeType(String cachedValue) {
+        return cachedValue == null || cachedValue.isEmpty() ? null : cachedValue;
+    }
+}
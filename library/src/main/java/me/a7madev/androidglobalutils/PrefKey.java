@@ -0,0 +1,332 @@
+package me.a7madev.androidglobalutils;
+
+import android.content.Context;
+import android.util.Log;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Typed shared prefs key, bound once to the WriteBehindPrefs store of its prefs file.
+ * The value is kept in a primitive field: get() and put() do not box and, after the first read,
+ * do not look up the SharedPreferences. The field is reloaded when the file is changed by another
+ * editor. Create keys once and keep them, for example in Application.onCreate():
+ * <pre>
+ * showHints = new PrefKey.BoolKey(this, "settings", "show_hints", true);
+ * </pre>
+ * The store holds every key bound to it: call unbind() when a key created for a shorter lived
+ * component, such as an Activity, is not used anymore.
+ * Keys always use SharedPreferences, also when GlobalUtils.setMappedSharedPrefsEnabled is on: the
+ * shared prefs helpers then use another file, do not mix keys and helpers on the same prefs name.
+ */
+public abstract class PrefKey {
+
+    public static final String TAG = PrefKey.class.getSimpleName();
+
+    /**
+     * int value
+     */
+    public static class IntKey extends PrefKey {
+
+        private final int defaultValue;
+        private volatile int value;
+
+        public IntKey(Context context, String prefsName, String name, int defaultValue) {
+            super(context, prefsName, name);
+            this.defaultValue = defaultValue;
+        }
+
+        public int get() {
+            if (!loaded) {
+                load();
+            }
+            return value;
+        }
+
+        public void put(int value) {
+            synchronized (store) {
+                if (loaded && this.value == value) {
+                    return;
+                }
+                this.value = value;
+                loaded = true;
+                store.putKey(this);
+            }
+        }
+
+        @Override
+        void read() {
+            value = store.getInt(name, defaultValue);
+        }
+
+        @Override
+        void readDefault() {
+            value = defaultValue;
+        }
+
+        @Override
+        Object getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * long value
+     */
+    public static class LongKey extends PrefKey {
+
+        private final long defaultValue;
+        private volatile long value;
+
+        public LongKey(Context context, String prefsName, String name, long defaultValue) {
+            super(context, prefsName, name);
+            this.defaultValue = defaultValue;
+        }
+
+        public long get() {
+            if (!loaded) {
+                load();
+            }
+            return value;
+        }
+
+        public void put(long value) {
+            synchronized (store) {
+                if (loaded && this.value == value) {
+                    return;
+                }
+                this.value = value;
+                loaded = true;
+                store.putKey(this);
+            }
+        }
+
+        @Override
+        void read() {
+            value = store.getLong(name, defaultValue);
+        }
+
+        @Override
+        void readDefault() {
+            value = defaultValue;
+        }
+
+        @Override
+        Object getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * float value
+     */
+    public static class FloatKey extends PrefKey {
+
+        private final float defaultValue;
+        private volatile float value;
+
+        public FloatKey(Context context, String prefsName, String name, float defaultValue) {
+            super(context, prefsName, name);
+            this.defaultValue = defaultValue;
+        }
+
+        public float get() {
+            if (!loaded) {
+                load();
+            }
+            return value;
+        }
+
+        public void put(float value) {
+            synchronized (store) {
+                if (loaded && Float.compare(this.value, value) == 0) {
+                    return;
+                }
+                this.value = value;
+                loaded = true;
+                store.putKey(this);
+            }
+        }
+
+        @Override
+        void read() {
+            value = store.getFloat(name, defaultValue);
+        }
+
+        @Override
+        void readDefault() {
+            value = defaultValue;
+        }
+
+        @Override
+        Object getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * boolean value
+     */
+    public static class BoolKey extends PrefKey {
+
+        private final boolean defaultValue;
+        private volatile boolean value;
+
+        public BoolKey(Context context, String prefsName, String name, boolean defaultValue) {
+            super(context, prefsName, name);
+            this.defaultValue = defaultValue;
+        }
+
+        public boolean get() {
+            if (!loaded) {
+                load();
+            }
+            return value;
+        }
+
+        public void put(boolean value) {
+            synchronized (store) {
+                if (loaded && this.value == value) {
+                    return;
+                }
+                this.value = value;
+                loaded = true;
+                store.putKey(this);
+            }
+        }
+
+        @Override
+        void read() {
+            value = store.getBoolean(name, defaultValue);
+        }
+
+        @Override
+        void readDefault() {
+            value = defaultValue;
+        }
+
+        @Override
+        Object getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * String value, null removes the key
+     */
+    public static class StringKey extends PrefKey {
+
+        private final String defaultValue;
+        private volatile String value;
+
+        public StringKey(Context context, String prefsName, String name, String defaultValue) {
+            super(context, prefsName, name);
+            this.defaultValue = defaultValue;
+        }
+
+        public String get() {
+            if (!loaded) {
+                load();
+            }
+            return value;
+        }
+
+        public void put(String value) {
+            if (value == null) {
+                remove();
+                return;
+            }
+            synchronized (store) {
+                if (loaded && value.equals(this.value)) {
+                    return;
+                }
+                this.value = value;
+                loaded = true;
+                store.putKey(this);
+            }
+        }
+
+        @Override
+        void read() {
+            value = store.getString(name, defaultValue);
+        }
+
+        @Override
+        void readDefault() {
+            value = defaultValue;
+        }
+
+        @Override
+        Object getValue() {
+            return value;
+        }
+    }
+
+    final String name;
+    final WriteBehindPrefs store;
+    // guarded by the store lock
+    boolean dirty;
+    volatile boolean loaded;
+
+    private PrefKey(Context context, String prefsName, String name) {
+        this.name = name;
+        this.store = WriteBehindPrefs.getInstance(context, prefsName);
+        store.bind(this);
+        if (GlobalUtils.isMappedSharedPrefsEnabled()) {
+            Log.w(TAG, "PrefKey " + name + " uses SharedPreferences, the shared prefs helpers of " + prefsName
+                    + " use a MappedPrefsStore and do not see its value");
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Is there a saved value
+     * @return boolean
+     */
+    public boolean contains() {
+        return store.contains(name);
+    }
+
+    /**
+     * Release the key from its store, a pending change is still written. Do not use the key after.
+     */
+    public void unbind() {
+        store.unbind(this);
+    }
+
+    /**
+     * Remove the saved value, get() returns the default value
+     */
+    public void remove() {
+        synchronized (store) {
+            store.remove(name);
+            dirty = false;
+            loaded = false;
+        }
+    }
+
+    // read the value from the store, the default value if it has another type
+    void load() {
+        synchronized (store) {
+            if (loaded) {
+                return;
+            }
+            try {
+                read();
+            } catch (ClassCastException e) {
+                logThis(TAG, "load: " + name + " has another type", e);
+                readDefault();
+            }
+            loaded = true;
+        }
+    }
+
+    abstract void read();
+
+    abstract void readDefault();
+
+    // boxed value, for the write
+    abstract Object getValue();
+}
@@ -0,0 +1,160 @@
+package me.a7madev.androidglobalutils;
+
+import android.content.Context;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.util.SparseArray;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * Cache of string, text and int array resources, keyed by resource ID for the current configuration.
+ * Arrays are read from the resources once and handed out as read only lists backed by the cached
+ * array, without copying. The cache is dropped on any configuration change of the resources, since
+ * arrays can be overridden for any qualifier (values-fr, values-land, values-sw600dp...).
+ * TypedArray resources are not cached, they must be recycled after use.
+ */
+public class ResourceArrayCache {
+
+    public static final String TAG = ResourceArrayCache.class.getSimpleName();
+
+    private static ResourceArrayCache instance;
+
+    /**
+     * Read only list view of an int array
+     */
+    public static class IntArrayList extends AbstractList<Integer> implements RandomAccess {
+
+        private final int[] values;
+
+        private IntArrayList(int[] values) {
+            this.values = values;
+        }
+
+        /**
+         * Get a value without boxing
+         * @param index int
+         * @return int
+         */
+        public int getInt(int index) {
+            return values[index];
+        }
+
+        /**
+         * Copy of the values
+         * @return int array
+         */
+        public int[] toIntArray() {
+            return values.clone();
+        }
+
+        @Override
+        public Integer get(int index) {
+            return values[index];
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+    }
+
+    private final SparseArray<List<String>> stringLists = new SparseArray<>();
+    private final SparseArray<List<CharSequence>> textLists = new SparseArray<>();
+    private final SparseArray<IntArrayList> intLists = new SparseArray<>();
+    private Configuration configuration;
+
+    /**
+     * Get the shared cache used by GlobalUtils
+     * @return ResourceArrayCache
+     */
+    public static synchronized ResourceArrayCache getInstance() {
+        if (instance == null) {
+            instance = new ResourceArrayCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Get a string array resource
+     * @param context  The context to use. Use application or activity context
+     * @param arrayResId  Resource id (R.array.name_array)
+     * @return Read only List of strings
+     * @throws Resources.NotFoundException if the resource does not exist
+     */
+    public synchronized List<String> getStringList(Context context, int arrayResId) {
+        Resources resources = getResources(context);
+        List<String> list = stringLists.get(arrayResId);
+        if (list == null) {
+            list = Collections.unmodifiableList(Arrays.asList(resources.getStringArray(arrayResId)));
+            stringLists.put(arrayResId, list);
+        }
+        return list;
+    }
+
+    /**
+     * Get a styled text array resource
+     * @param context  The context to use. Use application or activity context
+     * @param arrayResId  Resource id (R.array.name_array)
+     * @return Read only List of texts
+     * @throws Resources.NotFoundException if the resource does not exist
+     */
+    public synchronized List<CharSequence> getTextList(Context context, int arrayResId) {
+        Resources resources = getResources(context);
+        List<CharSequence> list = textLists.get(arrayResId);
+        if (list == null) {
+            list = Collections.unmodifiableList(Arrays.asList(resources.getTextArray(arrayResId)));
+            textLists.put(arrayResId, list);
+        }
+        return list;
+    }
+
+    /**
+     * Get an int array resource
+     * @param context  The context to use. Use application or activity context
+     * @param arrayResId  Resource id (R.array.name_array)
+     * @return Read only List of integers, read without boxing with getInt()
+     * @throws Resources.NotFoundException if the resource does not exist
+     */
+    public synchronized IntArrayList getIntList(Context context, int arrayResId) {
+        Resources resources = getResources(context);
+        IntArrayList list = intLists.get(arrayResId);
+        if (list == null) {
+            list = new IntArrayList(resources.getIntArray(arrayResId));
+            intLists.put(arrayResId, list);
+        }
+        return list;
+    }
+
+    /**
+     * Remove all cached arrays
+     */
+    public synchronized void clear() {
+        stringLists.clear();
+        textLists.clear();
+        intLists.clear();
+    }
+
+    /**
+     * Number of cached arrays
+     * @return int
+     */
+    public synchronized int size() {
+        return stringLists.size() + textLists.size() + intLists.size();
+    }
+
+    // resources of the context, clearing the cache if their configuration changed
+    private Resources getResources(Context context) {
+        Resources resources = context.getResources();
+        Configuration currentConfiguration = resources.getConfiguration();
+        if (configuration == null || configuration.diff(currentConfiguration) != 0) {
+            clear();
+            configuration = new Configuration(currentConfiguration);
+        }
+        return resources;
+    }
+}
@@ -0,0 +1,234 @@
+package me.a7madev.androidglobalutils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.media.ThumbnailUtils;
+import android.os.Build;
+import android.provider.MediaStore;
+import android.support.v4.util.LruCache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Two tier thumbnail cache: an in memory LRU sized by bitmap bytes in front of a DiskCacheManager
+ * of encoded thumbnails with a byte quota. Entries are keyed by file path, modification time and
+ * length, so a changed file gets a new thumbnail and the old one is evicted from disk in time.
+ * Returned bitmaps are shared by the cache: do not recycle or modify them. Bitmaps evicted from
+ * memory are never pooled or recycled, callers may still be drawing them, they are left to the GC.
+ */
+public class ThumbnailCache {
+
+    public static final String TAG = ThumbnailCache.class.getSimpleName();
+
+    public static final int DEFAULT_THUMBNAIL_SIZE = 256;
+    public static final long DEFAULT_DISK_CACHE_BYTES = 32 * 1024 * 1024;
+
+    private static final String DISK_CACHE_DIRECTORY = "thumbnails";
+    private static final int DISK_CACHE_QUALITY = 85;
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static ThumbnailCache instance;
+
+    private final LruCache<String, Bitmap> memoryCache;
+    private final File diskCacheDir;
+    private final long diskCacheBytes;
+    private DiskCacheManager diskCache;
+
+    /**
+     * Thumbnail Cache, keeping up to DEFAULT_DISK_CACHE_BYTES on disk
+     * @param diskCacheDir Directory for encoded thumbnails, or null to cache in memory only
+     * @param memoryCacheBytes Maximum bytes of bitmaps kept in memory
+     */
+    public ThumbnailCache(File diskCacheDir, int memoryCacheBytes) {
+        this(diskCacheDir, memoryCacheBytes, DEFAULT_DISK_CACHE_BYTES);
+    }
+
+    /**
+     * Thumbnail Cache
+     * @param diskCacheDir Directory for encoded thumbnails, used by this cache only, or null to cache in memory only
+     * @param memoryCacheBytes Maximum bytes of bitmaps kept in memory
+     * @param diskCacheBytes Maximum bytes of encoded thumbnails kept on disk
+     */
+    public ThumbnailCache(File diskCacheDir, int memoryCacheBytes, long diskCacheBytes) {
+        this.diskCacheDir = diskCacheDir;
+        this.diskCacheBytes = diskCacheBytes;
+        this.memoryCache = new LruCache<String, Bitmap>(Math.max(1, memoryCacheBytes)) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                // pooled bitmaps can have a larger allocation than their pixels
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT ? bitmap.getAllocationByteCount() : bitmap.getByteCount();
+            }
+        };
+    }
+
+    /**
+     * Get the shared cache, using 1/8 of the heap and the app cache directory
+     * @param context  The context to use. Use application or activity context
+     * @return ThumbnailCache
+     */
+    public static synchronized ThumbnailCache getInstance(Context context) {
+        if (instance == null) {
+            File diskCacheDir = new File(context.getApplicationContext().getCacheDir(), DISK_CACHE_DIRECTORY);
+            instance = new ThumbnailCache(diskCacheDir, (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8));
+            // thumbnails are decoded into pooled bitmaps, trim the pool with the app memory
+            BitmapPool.getInstance(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Get thumbnail in the default size
+     * @param file Image or video file
+     * @return Bitmap or null
+     */
+    public Bitmap getThumbnail(File file) {
+        return getThumbnail(file, DEFAULT_THUMBNAIL_SIZE);
+    }
+
+    /**
+     * Get thumbnail from memory, from disk or generate it
+     * @param file Image or video file
+     * @param targetSize Minimum size of the thumbnail longest side
+     * @return Bitmap or null, shared by the cache: do not recycle it
+     */
+    public Bitmap getThumbnail(File file, int targetSize) {
+        if (file == null || !file.exists()) {
+            return null;
+        }
+        String key = getCacheKey(file, targetSize);
+        Bitmap thumbBitmap = memoryCache.get(key);
+        if (thumbBitmap != null) {
+            return thumbBitmap;
+        }
+
+        String diskKey = getDiskKey(key);
+        DiskCacheManager diskCache = getDiskCache();
+        if (diskCache != null && diskKey != null) {
+            File diskFile = diskCache.get(diskKey);
+            if (diskFile != null) {
+                thumbBitmap = BitmapDecoder.decodeFile(diskFile.getPath());
+            }
+        }
+        if (thumbBitmap == null) {
+            thumbBitmap = createThumbnail(file, targetSize);
+            if (thumbBitmap != null && diskCache != null && diskKey != null) {
+                writeToDisk(diskCache, diskKey, thumbBitmap);
+            }
+        }
+        if (thumbBitmap != null) {
+            memoryCache.put(key, thumbBitmap);
+        }
+        return thumbBitmap;
+    }
+
+    /**
+     * Get thumbnail only if it is already in memory
+     * @param file Image or video file
+     * @param targetSize Minimum size of the thumbnail longest side
+     * @return Bitmap or null, shared by the cache: do not recycle it
+     */
+    public Bitmap getThumbnailFromMemory(File file, int targetSize) {
+        if (file == null) {
+            return null;
+        }
+        return memoryCache.get(getCacheKey(file, targetSize));
+    }
+
+    /**
+     * Remove all thumbnails from memory
+     */
+    public void clearMemory() {
+        memoryCache.evictAll();
+    }
+
+    /**
+     * Remove all thumbnails from memory and disk
+     */
+    public void clear() {
+        clearMemory();
+        DiskCacheManager diskCache = getDiskCache();
+        if (diskCache != null) {
+            diskCache.clear();
+        }
+    }
+
+    /**
+     * Generate a thumbnail without caching it
+     * @param file Image or video file
+     * @param targetSize Minimum size of the thumbnail longest side
+     * @return Bitmap or null, owned by the caller
+     */
+    public static Bitmap createThumbnail(File file, int targetSize) {
+        String path = file.getPath();
+        if (GlobalMediaUtils.isVideo(path)) {
+            int kind = targetSize <= 96 ? MediaStore.Video.Thumbnails.MICRO_KIND : MediaStore.Video.Thumbnails.MINI_KIND;
+            return ThumbnailUtils.createVideoThumbnail(path, kind);
+        }
+        return decodeSampledBitmap(path, targetSize);
+    }
+
+    /**
+     * Decode an image with a power of two sample size into a pooled bitmap, reading its bounds once
+     * @param path Image path
+     * @param targetSize Minimum size of the decoded bitmap longest side
+     * @return Bitmap or null
+     */
+    public static Bitmap decodeSampledBitmap(String path, int targetSize) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(path, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+        // sample on the longest side so it stays at least targetSize
+        if (options.outWidth >= options.outHeight) {
+            options.inSampleSize = GlobalUtils.calculateInSampleSize(options.outWidth, options.outHeight, targetSize, 0);
+        } else {
+            options.inSampleSize = GlobalUtils.calculateInSampleSize(options.outWidth, options.outHeight, 0, targetSize);
+        }
+        options.inJustDecodeBounds = false;
+        return BitmapDecoder.decodeFile(path, options);
+    }
+
+    private static String getCacheKey(File file, int targetSize) {
+        return file.getPath() + '|' + file.lastModified() + '|' + file.length() + '|' + targetSize;
+    }
+
+    // the disk cache is opened on first use, reading its journal is not done on the caller of getInstance
+    private synchronized DiskCacheManager getDiskCache() {
+        if (diskCache == null && diskCacheDir != null) {
+            diskCache = new DiskCacheManager(diskCacheDir, diskCacheBytes);
+        }
+        return diskCache;
+    }
+
+    private static String getDiskKey(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(key.getBytes("UTF-8"));
+            char[] name = new char[digest.length * 2];
+            for (int i = 0; i < digest.length; i++) {
+                name[i * 2] = HEX_DIGITS[(digest[i] >> 4) & 0x0F];
+                name[i * 2 + 1] = HEX_DIGITS[digest[i] & 0x0F];
+            }
+            return new String(name);
+        } catch (NoSuchAlgorithmException | IOException e) {
+            logThis(TAG, "getDiskKey Exception", e);
+        }
+        return null;
+    }
+
+    private static void writeToDisk(DiskCacheManager diskCache, String diskKey, Bitmap thumbBitmap) {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        Bitmap.CompressFormat format = thumbBitmap.hasAlpha() ? Bitmap.CompressFormat.PNG : Bitmap.CompressFormat.JPEG;
+        if (thumbBitmap.compress(format, DISK_CACHE_QUALITY, outputStream)) {
+            diskCache.put(diskKey, outputStream.toByteArray());
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package me.a7madev.androidglobalutils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.os.Handler;
+import android.os.Looper;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Loads thumbnails in the background on a bounded worker pool.
+ * Higher priority requests run first and, for the same priority, the newest request runs first,
+ * so the cells visible after a fling are loaded before the ones that scrolled away.
+ * Identical requests in flight share one job, and every request can be cancelled through its handle.
+ */
+public class ThumbnailLoader {
+
+    public static final String TAG = ThumbnailLoader.class.getSimpleName();
+
+    public static final int DEFAULT_THREADS = 2;
+    public static final int DEFAULT_PRIORITY = 0;
+
+    private static ThumbnailLoader instance;
+
+    /**
+     * Thumbnail callback, invoked on the main thread
+     */
+    public interface Callback {
+
+        /**
+         * Thumbnail is ready
+         * @param file Requested file
+         * @param thumbnail Bitmap or null if the thumbnail could not be created, shared by the ThumbnailCache: do not recycle it
+         */
+        void onThumbnailLoaded(File file, Bitmap thumbnail);
+    }
+
+    /**
+     * Handle of a thumbnail request
+     */
+    public final class Request {
+
+        private final Callback callback;
+        private Job job;
+        private boolean cancelled;
+
+        private Request(Callback callback) {
+            this.callback = callback;
+        }
+
+        /**
+         * Cancel the request, its callback will not be invoked.
+         * The job is removed from the queue when no other request shares it.
+         */
+        public void cancel() {
+            cancelRequest(this);
+        }
+
+        /**
+         * Is request cancelled
+         * @return boolean
+         */
+        public boolean isCancelled() {
+            synchronized (ThumbnailLoader.this) {
+                return cancelled;
+            }
+        }
+    }
+
+    private final ThumbnailCache thumbnailCache;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Map<String, Job> inFlightJobs = new HashMap<>();
+    private long sequence;
+
+    private final AtomicLong completedCount = new AtomicLong();
+    private final AtomicLong coalescedCount = new AtomicLong();
+    private final AtomicLong cancelledCount = new AtomicLong();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * Thumbnail Loader
+     * @param thumbnailCache ThumbnailCache used to get or create the thumbnails
+     * @param threads Number of worker threads
+     */
+    public ThumbnailLoader(ThumbnailCache thumbnailCache, int threads) {
+        this.thumbnailCache = thumbnailCache;
+        threads = Math.max(1, threads);
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new WorkerThreadFactory(TAG));
+    }
+
+    /**
+     * Get the shared loader, using the shared ThumbnailCache
+     * @param context  The context to use. Use application or activity context
+     * @return ThumbnailLoader
+     */
+    public static synchronized ThumbnailLoader getInstance(Context context) {
+        if (instance == null) {
+            instance = new ThumbnailLoader(ThumbnailCache.getInstance(context), DEFAULT_THREADS);
+        }
+        return instance;
+    }
+
+    /**
+     * Load a thumbnail in the default size and priority
+     * @param file Image or video file
+     * @param callback Callback
+     * @return Request handle
+     */
+    public Request load(File file, Callback callback) {
+        return load(file, ThumbnailCache.DEFAULT_THUMBNAIL_SIZE, DEFAULT_PRIORITY, callback);
+    }
+
+    /**
+     * Load a thumbnail. If it is already in memory, or the file is null, the callback is invoked
+     * before this method returns.
+     * @param file Image or video file
+     * @param targetSize Minimum size of the thumbnail longest side
+     * @param priority Higher priority requests run first
+     * @param callback Callback
+     * @return Request handle
+     */
+    public Request load(File file, int targetSize, int priority, Callback callback) {
+        Request request = new Request(callback);
+        if (file == null) {
+            callback.onThumbnailLoaded(null, null);
+            return request;
+        }
+        Bitmap cachedBitmap = thumbnailCache.getThumbnailFromMemory(file, targetSize);
+        if (cachedBitmap != null) {
+            callback.onThumbnailLoaded(file, cachedBitmap);
+            return request;
+        }
+
+        String key = file.getPath() + '|' + targetSize;
+        synchronized (this) {
+            Job job = inFlightJobs.get(key);
+            if (job != null) {
+                coalescedCount.incrementAndGet();
+                // move the queued job to the front of its new priority
+                if (executor.getQueue().remove(job)) {
+                    job.priority = Math.max(job.priority, priority);
+                    job.sequence = ++sequence;
+                    executor.execute(job);
+                }
+            } else {
+                job = new Job(key, file, targetSize, priority, ++sequence);
+                inFlightJobs.put(key, job);
+                executor.execute(job);
+            }
+            request.job = job;
+            job.requests.add(request);
+        }
+        return request;
+    }
+
+    /**
+     * Number of jobs waiting for a worker thread
+     * @return int
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Number of completed jobs
+     * @return long
+     */
+    public long getCompletedCount() {
+        return completedCount.get();
+    }
+
+    /**
+     * Number of requests that joined an identical job in flight
+     * @return long
+     */
+    public long getCoalescedCount() {
+        return coalescedCount.get();
+    }
+
+    /**
+     * Number of jobs dropped because all their requests were cancelled
+     * @return long
+     */
+    public long getCancelledCount() {
+        return cancelledCount.get();
+    }
+
+    /**
+     * Average time from request to thumbnail ready
+     * @return long milliseconds
+     */
+    public long getAverageLatencyMillis() {
+        long completed = completedCount.get();
+        return completed > 0 ? TimeUnit.NANOSECONDS.toMillis(totalLatencyNanos.get() / completed) : 0;
+    }
+
+    /**
+     * Longest time from request to thumbnail ready
+     * @return long milliseconds
+     */
+    public long getMaxLatencyMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get());
+    }
+
+    /**
+     * Cancel all requests and stop the worker threads
+     */
+    public void shutdown() {
+        synchronized (this) {
+            for (Job job : inFlightJobs.values()) {
+                for (Request request : job.requests) {
+                    request.cancelled = true;
+                }
+                job.requests.clear();
+            }
+            inFlightJobs.clear();
+        }
+        executor.shutdownNow();
+    }
+
+    private synchronized void cancelRequest(Request request) {
+        if (request.cancelled) {
+            return;
+        }
+        request.cancelled = true;
+        Job job = request.job;
+        if (job != null && job.requests.remove(request) && job.requests.isEmpty()) {
+            inFlightJobs.remove(job.key);
+            if (executor.getQueue().remove(job)) {
+                cancelledCount.incrementAndGet();
+            }
+        }
+    }
+
+    private void onJobFinished(Job job, final Bitmap thumbnail) {
+        long latencyNanos = System.nanoTime() - job.enqueueTimeNanos;
+        completedCount.incrementAndGet();
+        totalLatencyNanos.addAndGet(latencyNanos);
+        long maxLatency = maxLatencyNanos.get();
+        while (latencyNanos > maxLatency && !maxLatencyNanos.compareAndSet(maxLatency, latencyNanos)) {
+            maxLatency = maxLatencyNanos.get();
+        }
+
+        final List<Request> requests;
+        synchronized (this) {
+            if (inFlightJobs.get(job.key) == job) {
+                inFlightJobs.remove(job.key);
+            }
+            requests = new ArrayList<>(job.requests);
+            job.requests.clear();
+        }
+        if (requests.isEmpty()) {
+            return;
+        }
+        final File file = job.file;
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for (Request request : requests) {
+                    if (!request.isCancelled()) {
+                        request.callback.onThumbnailLoaded(file, thumbnail);
+                    }
+                }
+            }
+        });
+    }
+
+    private class Job implements Runnable, Comparable<Job> {
+
+        private final String key;
+        private final File file;
+        private final int targetSize;
+        private final long enqueueTimeNanos = System.nanoTime();
+        private final List<Request> requests = new ArrayList<>(1);
+        private int priority;
+        private long sequence;
+
+        private Job(String key, File file, int targetSize, int priority, long sequence) {
+            this.key = key;
+            this.file = file;
+            this.targetSize = targetSize;
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            synchronized (ThumbnailLoader.this) {
+                if (requests.isEmpty()) {
+                    return;
+                }
+            }
+            Bitmap thumbnail = null;
+            try {
+                thumbnail = thumbnailCache.getThumbnail(file, targetSize);
+            } catch (Exception e) {
+                logThis(TAG, "Job Exception", e);
+            }
+            onJobFinished(this, thumbnail);
+        }
+
+        @Override
+        public int compareTo(Job other) {
+            // priority and sequence only change while the job is out of the queue
+            if (priority != other.priority) {
+                return priority > other.priority ? -1 : 1;
+            }
+            return sequence > other.sequence ? -1 : (sequence < other.sequence ? 1 : 0);
+        }
+    }
+}
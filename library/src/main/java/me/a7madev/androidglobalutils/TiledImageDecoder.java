@@ -0,0 +1,447 @@
+package me.a7madev.androidglobalutils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.BitmapRegionDecoder;
+import android.graphics.Rect;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.v4.util.LruCache;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Displays very large images in constant memory with BitmapRegionDecoder.
+ * The image is split into square tiles at every power of two sample size. setViewport() picks the
+ * sample size matching the zoom, decodes the visible tiles that are not cached on a worker pool,
+ * newest first, and cancels the tiles that left the view before they are decoded.
+ * Decoded tiles are kept in an LRU sized by bitmap bytes, and evicted tiles that are not visible go
+ * back to the BitmapPool.
+ * A small preview of the whole image is decoded first, to draw under the missing tiles.
+ * Tiles are in the stored pixel orientation, apply getOrientation() when drawing.
+ * Call the public methods and release() from the main thread.
+ */
+public class TiledImageDecoder {
+
+    public static final String TAG = TiledImageDecoder.class.getSimpleName();
+
+    public static final int DEFAULT_TILE_SIZE = 256;
+    public static final int DEFAULT_THREADS = 2;
+
+    /**
+     * Decoded part of the image
+     */
+    public static class Tile {
+
+        public final int sampleSize;
+        public final int column;
+        public final int row;
+        // area covered in image coordinates
+        public final Rect rect;
+        private Bitmap bitmap;
+
+        private Tile(int sampleSize, int column, int row, Rect rect) {
+            this.sampleSize = sampleSize;
+            this.column = column;
+            this.row = row;
+            this.rect = rect;
+        }
+
+        /**
+         * Tile pixels, rect size divided by the sample size
+         * @return Bitmap
+         */
+        public Bitmap getBitmap() {
+            return bitmap;
+        }
+    }
+
+    /**
+     * Tile callbacks, invoked on the main thread
+     */
+    public interface Listener {
+
+        /**
+         * A visible tile, or the preview, is ready to be drawn
+         * @param tile Tile
+         */
+        void onTileReady(Tile tile);
+    }
+
+    private final String path;
+    private final int imageWidth;
+    private final int imageHeight;
+    private final int orientation;
+    private final int tileSize;
+    private final int previewSampleSize;
+    private final ThreadPoolExecutor executor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ConcurrentLinkedQueue<BitmapRegionDecoder> idleDecoders = new ConcurrentLinkedQueue<>();
+    private final LruCache<Long, Tile> tileCache;
+    private final Map<Long, TileJob> inFlightJobs = new HashMap<>();
+    private final Set<Long> visibleKeys = new HashSet<>();
+    private final List<Tile> visibleTiles = new ArrayList<>();
+    private Listener listener;
+    private Tile preview;
+    private int sampleSize;
+    private long sequence;
+    private volatile boolean released;
+
+    private TiledImageDecoder(String path, BitmapRegionDecoder decoder, int tileSize, int threads, int memoryCacheBytes) {
+        this.path = path;
+        this.imageWidth = decoder.getWidth();
+        this.imageHeight = decoder.getHeight();
+        this.orientation = ExifReader.readOrientation(path);
+        this.tileSize = tileSize;
+        this.executor = new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS,
+                new PriorityBlockingQueue<Runnable>(), new WorkerThreadFactory(TAG));
+        this.tileCache = new LruCache<Long, Tile>(Math.max(1, memoryCacheBytes)) {
+            @Override
+            protected int sizeOf(Long key, Tile tile) {
+                // pooled bitmaps can have a larger allocation than their pixels
+                return Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT ? tile.bitmap.getAllocationByteCount() : tile.bitmap.getByteCount();
+            }
+
+            @Override
+            protected void entryRemoved(boolean evicted, Long key, Tile oldTile, Tile newTile) {
+                // a visible tile can still be drawn, its bitmap is left to the GC
+                if (oldTile != newTile && !visibleTiles.contains(oldTile)) {
+                    BitmapPool.getInstance().put(oldTile.bitmap);
+                }
+            }
+        };
+        idleDecoders.offer(decoder);
+
+        int previewSampleSize = 1;
+        while (Math.max(imageWidth, imageHeight) / previewSampleSize > tileSize) {
+            previewSampleSize *= 2;
+        }
+        this.previewSampleSize = previewSampleSize;
+        this.sampleSize = previewSampleSize;
+    }
+
+    /**
+     * Open an image with the default tile size and threads, caching tiles in 1/8 of the heap
+     * @param path Image path (JPEG, PNG or WebP)
+     * @return TiledImageDecoder or null if the image can not be read
+     */
+    public static TiledImageDecoder open(String path) {
+        return open(path, DEFAULT_TILE_SIZE, DEFAULT_THREADS, (int) Math.min(Integer.MAX_VALUE, Runtime.getRuntime().maxMemory() / 8));
+    }
+
+    /**
+     * Open an image
+     * @param path Image path (JPEG, PNG or WebP)
+     * @param tileSize Tile side in decoded pixels
+     * @param threads Number of worker threads, each with its own region decoder
+     * @param memoryCacheBytes Maximum bytes of cached tiles, at least two screens of tiles
+     * @return TiledImageDecoder or null if the image can not be read
+     */
+    public static TiledImageDecoder open(String path, int tileSize, int threads, int memoryCacheBytes) {
+        BitmapRegionDecoder decoder = newDecoder(path);
+        if (decoder == null) {
+            return null;
+        }
+        if (decoder.getWidth() <= 0 || decoder.getHeight() <= 0) {
+            decoder.recycle();
+            return null;
+        }
+        return new TiledImageDecoder(path, decoder, Math.max(16, tileSize), Math.max(1, threads), memoryCacheBytes);
+    }
+
+    /**
+     * Set tile callbacks, and start decoding the preview
+     * @param listener Listener
+     * @return TiledImageDecoder
+     */
+    @MainThread
+    public TiledImageDecoder setListener(Listener listener) {
+        this.listener = listener;
+        if (preview == null && !inFlightJobs.containsKey(getPreviewKey())) {
+            submit(getPreviewKey(), new Tile(previewSampleSize, 0, 0, new Rect(0, 0, imageWidth, imageHeight)));
+        }
+        return this;
+    }
+
+    /**
+     * Set the visible area. Decodes the missing tiles and cancels the ones not visible anymore.
+     * @param visibleRect Visible area in image coordinates
+     * @param scale Displayed pixels per image pixel
+     */
+    @MainThread
+    public void setViewport(Rect visibleRect, float scale) {
+        if (released) {
+            return;
+        }
+        sampleSize = getSampleSize(scale);
+        int tileSpan = tileSize * sampleSize;
+        int firstColumn = Math.max(0, visibleRect.left / tileSpan);
+        int firstRow = Math.max(0, visibleRect.top / tileSpan);
+        int lastColumn = Math.min((imageWidth - 1) / tileSpan, (visibleRect.right - 1) / tileSpan);
+        int lastRow = Math.min((imageHeight - 1) / tileSpan, (visibleRect.bottom - 1) / tileSpan);
+
+        visibleKeys.clear();
+        visibleTiles.clear();
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int column = firstColumn; column <= lastColumn; column++) {
+                long key = getTileKey(sampleSize, column, row);
+                visibleKeys.add(key);
+                Tile tile = tileCache.get(key);
+                if (tile != null) {
+                    visibleTiles.add(tile);
+                } else if (!inFlightJobs.containsKey(key)) {
+                    Rect rect = new Rect(column * tileSpan, row * tileSpan,
+                            Math.min(imageWidth, (column + 1) * tileSpan), Math.min(imageHeight, (row + 1) * tileSpan));
+                    submit(key, new Tile(sampleSize, column, row, rect));
+                }
+            }
+        }
+
+        Iterator<Map.Entry<Long, TileJob>> iterator = inFlightJobs.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Long, TileJob> entry = iterator.next();
+            if (!visibleKeys.contains(entry.getKey()) && entry.getKey() != getPreviewKey()) {
+                entry.getValue().cancel();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Decoded tiles of the current viewport, draw them over the preview
+     * @return List of tiles, valid until the next setViewport() call
+     */
+    @MainThread
+    public List<Tile> getVisibleTiles() {
+        return visibleTiles;
+    }
+
+    /**
+     * Whole image at a small size
+     * @return Tile or null if it is not decoded yet
+     */
+    @MainThread
+    public Tile getPreview() {
+        return preview;
+    }
+
+    /**
+     * Sample size used for the current viewport
+     * @return int power of two
+     */
+    @MainThread
+    public int getSampleSize() {
+        return sampleSize;
+    }
+
+    public int getImageWidth() {
+        return imageWidth;
+    }
+
+    public int getImageHeight() {
+        return imageHeight;
+    }
+
+    /**
+     * EXIF orientation of the image
+     * @return int ExifReader orientation
+     */
+    public int getOrientation() {
+        return orientation;
+    }
+
+    /**
+     * Number of tile decodes waiting for a worker thread
+     * @return int
+     */
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    /**
+     * Cancel all decodes, give back the cached tiles to the BitmapPool and close the image
+     */
+    @MainThread
+    public void release() {
+        if (released) {
+            return;
+        }
+        released = true;
+        for (TileJob job : inFlightJobs.values()) {
+            job.cancel();
+        }
+        inFlightJobs.clear();
+        executor.shutdownNow();
+        visibleKeys.clear();
+        visibleTiles.clear();
+        tileCache.evictAll();
+        if (preview != null) {
+            BitmapPool.getInstance().put(preview.bitmap);
+            preview = null;
+        }
+        recycleIdleDecoders();
+    }
+
+    // largest power of two not above the image pixels per displayed pixel
+    private int getSampleSize(float scale) {
+        int sampleSize = 1;
+        if (scale > 0) {
+            while (sampleSize < previewSampleSize && sampleSize * 2 * scale <= 1) {
+                sampleSize *= 2;
+            }
+        }
+        return sampleSize;
+    }
+
+    private void submit(long key, Tile tile) {
+        TileJob job = new TileJob(key, tile, ++sequence);
+        inFlightJobs.put(key, job);
+        try {
+            executor.execute(job);
+        } catch (RejectedExecutionException e) {
+            logThis(TAG, "submit RejectedExecutionException", e);
+            inFlightJobs.remove(key);
+        }
+    }
+
+    // runs on the main thread
+    private void onTileDecoded(TileJob job, Bitmap bitmap) {
+        if (inFlightJobs.get(job.key) == job) {
+            inFlightJobs.remove(job.key);
+        }
+        if (bitmap == null) {
+            return;
+        }
+        if (released || job.cancelled) {
+            BitmapPool.getInstance().put(bitmap);
+            return;
+        }
+        Tile tile = job.tile;
+        tile.bitmap = bitmap;
+        if (job.key == getPreviewKey()) {
+            preview = tile;
+        } else {
+            tileCache.put(job.key, tile);
+            if (visibleKeys.contains(job.key)) {
+                visibleTiles.add(tile);
+            }
+        }
+        if (listener != null) {
+            listener.onTileReady(tile);
+        }
+    }
+
+    private BitmapRegionDecoder obtainDecoder() {
+        BitmapRegionDecoder decoder = idleDecoders.poll();
+        // at most one decoder per worker thread
+        return decoder != null ? decoder : newDecoder(path);
+    }
+
+    private void releaseDecoder(BitmapRegionDecoder decoder) {
+        idleDecoders.offer(decoder);
+        if (released) {
+            recycleIdleDecoders();
+        }
+    }
+
+    private void recycleIdleDecoders() {
+        BitmapRegionDecoder decoder;
+        while ((decoder = idleDecoders.poll()) != null) {
+            decoder.recycle();
+        }
+    }
+
+    private static BitmapRegionDecoder newDecoder(String path) {
+        try {
+            return BitmapRegionDecoder.newInstance(path, false);
+        } catch (IOException e) {
+            logThis(TAG, "newDecoder IOException", e);
+        }
+        return null;
+    }
+
+    // sample size exponent, column and row
+    private static long getTileKey(int sampleSize, int column, int row) {
+        return ((long) Integer.numberOfTrailingZeros(sampleSize) << 58) | ((long) column << 29) | row;
+    }
+
+    // the preview is the only tile at its sample size
+    private long getPreviewKey() {
+        return getTileKey(previewSampleSize, 0, 0) | (1L << 63);
+    }
+
+    private class TileJob implements Runnable, Comparable<TileJob> {
+
+        private final long key;
+        private final Tile tile;
+        private final long sequence;
+        private final BitmapFactory.Options options = new BitmapFactory.Options();
+        private volatile boolean cancelled;
+
+        private TileJob(long key, Tile tile, long sequence) {
+            this.key = key;
+            this.tile = tile;
+            this.sequence = sequence;
+            options.inSampleSize = tile.sampleSize;
+        }
+
+        private void cancel() {
+            cancelled = true;
+            if (!executor.getQueue().remove(this)) {
+                // already decoding
+                options.requestCancelDecode();
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled || released) {
+                return;
+            }
+            Bitmap bitmap = null;
+            BitmapRegionDecoder decoder = obtainDecoder();
+            if (decoder != null) {
+                try {
+                    bitmap = BitmapDecoder.decodeRegion(decoder, tile.rect, options);
+                } catch (Exception e) {
+                    logThis(TAG, "TileJob Exception", e);
+                } finally {
+                    releaseDecoder(decoder);
+                }
+            }
+            final Bitmap decodedBitmap = bitmap;
+            mainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    onTileDecoded(TileJob.this, decodedBitmap);
+                }
+            });
+        }
+
+        @Override
+        public int compareTo(TileJob other) {
+            // the preview first, then the latest viewport
+            boolean previewJob = key == getPreviewKey();
+            if (previewJob != (other.key == getPreviewKey())) {
+                return previewJob ? -1 : 1;
+            }
+            return sequence > other.sequence ? -1 : (sequence < other.sequence ? 1 : 0);
+        }
+    }
+}
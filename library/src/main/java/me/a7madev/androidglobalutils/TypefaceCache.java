@@ -0,0 +1,211 @@
+package me.a7madev.androidglobalutils;
+
+import android.content.Context;
+import android.content.res.AssetManager;
+import android.graphics.Typeface;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Process wide cache of typefaces created from assets, keyed by asset path.
+ * Every font is parsed once: a thread asking for a font being loaded waits for that load instead
+ * of parsing the file again. preload() loads the fonts of the first screens on a background thread
+ * during startup, so binding views does not parse fonts on the main thread.
+ */
+public class TypefaceCache {
+
+    public static final String TAG = TypefaceCache.class.getSimpleName();
+
+    private static TypefaceCache instance;
+
+    private final ConcurrentHashMap<String, FutureTask<Typeface>> typefaces = new ConcurrentHashMap<>();
+    private ExecutorService preloadExecutor;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong loadCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong totalLoadNanos = new AtomicLong();
+
+    /**
+     * Get the shared cache used by GlobalUtils.getTypeFace
+     * @return TypefaceCache
+     */
+    public static synchronized TypefaceCache getInstance() {
+        if (instance == null) {
+            instance = new TypefaceCache();
+        }
+        return instance;
+    }
+
+    /**
+     * Get a typeface, creating it on the first call
+     * @param context  The context to use. Use application or activity context
+     * @param assetPath  The file name of the font data in the assets directory (fonts/Roboto-Light.ttf)
+     * @return Typeface or null if context or assetPath is null
+     * @throws RuntimeException thrown by Typeface.createFromAsset when the font can not be created ("Font asset not found")
+     */
+    public Typeface get(Context context, String assetPath) {
+        if (context == null || assetPath == null) {
+            return null;
+        }
+        FutureTask<Typeface> task = typefaces.get(assetPath);
+        if (task != null && task.isDone()) {
+            hitCount.incrementAndGet();
+        } else {
+            missCount.incrementAndGet();
+            if (task == null) {
+                task = obtainTask(context.getAssets(), assetPath);
+            }
+            // run here if no other thread is loading it
+            task.run();
+        }
+        return getResult(assetPath, task);
+    }
+
+    /**
+     * Load fonts on a background thread
+     * @param context  The context to use. Use application or activity context
+     * @param assetPaths Font paths in the assets directory
+     */
+    public void preload(Context context, String... assetPaths) {
+        if (context == null || assetPaths == null) {
+            return;
+        }
+        final AssetManager assetManager = context.getApplicationContext().getAssets();
+        for (final String assetPath : assetPaths) {
+            if (assetPath == null || typefaces.containsKey(assetPath)) {
+                continue;
+            }
+            getPreloadExecutor().execute(new Runnable() {
+                @Override
+                public void run() {
+                    FutureTask<Typeface> task = obtainTask(assetManager, assetPath);
+                    task.run();
+                    try {
+                        getResult(assetPath, task);
+                    } catch (RuntimeException e) {
+                        logThis(TAG, "preload: could not create " + assetPath, e);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * Is a font loaded
+     * @param assetPath Font path in the assets directory
+     * @return boolean
+     */
+    public boolean contains(String assetPath) {
+        FutureTask<Typeface> task = assetPath != null ? typefaces.get(assetPath) : null;
+        return task != null && task.isDone();
+    }
+
+    /**
+     * Forget all loaded fonts
+     */
+    public void clear() {
+        typefaces.clear();
+    }
+
+    /**
+     * Number of calls served from the cache
+     * @return long
+     */
+    public long hitCount() {
+        return hitCount.get();
+    }
+
+    /**
+     * Number of calls that loaded the font or waited for it
+     * @return long
+     */
+    public long missCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Number of fonts created, including the preloaded ones
+     * @return long
+     */
+    public long loadCount() {
+        return loadCount.get();
+    }
+
+    /**
+     * Number of fonts that could not be created
+     * @return long
+     */
+    public long failedCount() {
+        return failedCount.get();
+    }
+
+    /**
+     * Time spent creating fonts
+     * @return long milliseconds
+     */
+    public long getTotalLoadMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(totalLoadNanos.get());
+    }
+
+    /**
+     * Average time to create a font
+     * @return long milliseconds
+     */
+    public long getAverageLoadMillis() {
+        long loaded = loadCount.get();
+        return loaded > 0 ? TimeUnit.NANOSECONDS.toMillis(totalLoadNanos.get() / loaded) : 0;
+    }
+
+    // the task loading a font, shared by all threads asking for it
+    private FutureTask<Typeface> obtainTask(final AssetManager assetManager, final String assetPath) {
+        FutureTask<Typeface> task = new FutureTask<>(new Callable<Typeface>() {
+            @Override
+            public Typeface call() {
+                long startNanos = System.nanoTime();
+                Typeface typeface = Typeface.createFromAsset(assetManager, assetPath);
+                totalLoadNanos.addAndGet(System.nanoTime() - startNanos);
+                loadCount.incrementAndGet();
+                return typeface;
+            }
+        });
+        FutureTask<Typeface> existingTask = typefaces.putIfAbsent(assetPath, task);
+        return existingTask != null ? existingTask : task;
+    }
+
+    // the font, or the exception of Typeface.createFromAsset
+    private Typeface getResult(String assetPath, FutureTask<Typeface> task) {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // failures are not cached, the next call tries again
+            if (typefaces.remove(assetPath, task)) {
+                failedCount.incrementAndGet();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new RuntimeException("Could not create " + assetPath, e.getCause());
+        }
+        return null;
+    }
+
+    private synchronized ExecutorService getPreloadExecutor() {
+        if (preloadExecutor == null) {
+            preloadExecutor = Executors.newSingleThreadExecutor(new WorkerThreadFactory(TAG));
+        }
+        return preloadExecutor;
+    }
+}
@@ -0,0 +1,39 @@
+package me.a7madev.androidglobalutils;
+
+import android.os.Process;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Thread factory used by the library worker pools: named daemon threads running at a fixed
+ * process priority (Process.THREAD_PRIORITY_BACKGROUND by default)
+ */
+class WorkerThreadFactory implements ThreadFactory {
+
+    private final String namePrefix;
+    private final int threadPriority;
+    private final AtomicInteger threadCount = new AtomicInteger();
+
+    WorkerThreadFactory(String namePrefix) {
+        this(namePrefix, Process.THREAD_PRIORITY_BACKGROUND);
+    }
+
+    WorkerThreadFactory(String namePrefix, int threadPriority) {
+        this.namePrefix = namePrefix;
+        this.threadPriority = threadPriority;
+    }
+
+    @Override
+    public Thread newThread(final Runnable runnable) {
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(threadPriority);
+                runnable.run();
+            }
+        }, namePrefix + "-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
@@ -0,0 +1,378 @@
+package me.a7madev.androidglobalutils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static me.a7madev.androidglobalutils.GlobalUtils.logThis;
+
+/**
+ * Write behind layer over a SharedPreferences file, used by the GlobalUtils shared prefs helpers.
+ * Changes are kept in an in memory overlay and applied with a single editor on a worker thread,
+ * once per time window or as soon as a batch is full, instead of one disk write per apply().
+ * Batches are still written with apply(): onPause() and onStop() wait for a batch whose disk write
+ * is in progress, but there is at most one such write per window instead of one per change. The
+ * worker waits for every disk write before applying the next batch.
+ * Reads are served from the overlay first, so a value is visible as soon as it is put.
+ * Pending changes are lost if the process dies before they are written: call flush() in onPause().
+ * PrefKey instances bound to a store keep their value in a primitive field, and are only marked
+ * as changed here: the value is read from the key when it is written.
+ */
+public class WriteBehindPrefs {
+
+    public static final String TAG = WriteBehindPrefs.class.getSimpleName();
+
+    public static final long DEFAULT_WINDOW_MILLIS = 500;
+    public static final int DEFAULT_BATCH_SIZE = 64;
+
+    // overlay value of a removed key
+    private static final Object REMOVED = new Object();
+
+    private static final Map<String, WriteBehindPrefs> instances = new HashMap<>();
+    private static ScheduledExecutorService executor;
+
+    private final SharedPreferences sharedPreferences;
+    // changes not written yet
+    private final Map<String, Object> pendingChanges = new HashMap<>();
+    private boolean pendingClear;
+    private boolean writeScheduled;
+    private long windowMillis = DEFAULT_WINDOW_MILLIS;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int writesCount;
+    private final List<PrefKey> boundKeys = new ArrayList<>();
+
+    // held here, SharedPreferences only keeps weak references to its listeners
+    private final SharedPreferences.OnSharedPreferenceChangeListener changeListener = new SharedPreferences.OnSharedPreferenceChangeListener() {
+        @Override
+        public void onSharedPreferenceChanged(SharedPreferences sharedPreferences, String key) {
+            synchronized (WriteBehindPrefs.this) {
+                for (PrefKey prefKey : boundKeys) {
+                    // a null key is a clear
+                    if (!prefKey.dirty && (key == null || key.equals(prefKey.name))) {
+                        prefKey.loaded = false;
+                    }
+                }
+            }
+        }
+    };
+
+    private final Runnable writeTask = new Runnable() {
+        @Override
+        public void run() {
+            write(true);
+        }
+    };
+
+    private WriteBehindPrefs(SharedPreferences sharedPreferences) {
+        this.sharedPreferences = sharedPreferences;
+    }
+
+    /**
+     * Get the store of a prefs file
+     * @param context Context
+     * @param prefsName String
+     * @return WriteBehindPrefs
+     */
+    public static WriteBehindPrefs getInstance(Context context, String prefsName) {
+        synchronized (instances) {
+            WriteBehindPrefs instance = instances.get(prefsName);
+            if (instance == null) {
+                instance = new WriteBehindPrefs(context.getApplicationContext().getSharedPreferences(prefsName, Context.MODE_PRIVATE));
+                instances.put(prefsName, instance);
+            }
+            return instance;
+        }
+    }
+
+    /**
+     * Write the pending changes of all the stores
+     */
+    public static void flushAll() {
+        synchronized (instances) {
+            for (WriteBehindPrefs instance : instances.values()) {
+                instance.flush();
+            }
+        }
+    }
+
+    /**
+     * Set the time changes are kept before being written
+     * @param windowMillis long milliseconds
+     * @return WriteBehindPrefs
+     */
+    public synchronized WriteBehindPrefs setWindow(long windowMillis) {
+        this.windowMillis = Math.max(0, windowMillis);
+        return this;
+    }
+
+    /**
+     * Set the number of pending changes written without waiting for the window
+     * @param batchSize int
+     * @return WriteBehindPrefs
+     */
+    public synchronized WriteBehindPrefs setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
+        return this;
+    }
+
+    /**
+     * Put a value
+     * @param key String
+     * @param value String, Boolean, Integer, Long or Float, null to remove the key
+     */
+    public synchronized void put(String key, Object value) {
+        if (key == null) {
+            return;
+        }
+        if (value != null && !(value instanceof String || value instanceof Boolean || value instanceof Integer
+                || value instanceof Long || value instanceof Float)) {
+            throw new IllegalArgumentException("Unsupported value type: " + value.getClass().getName());
+        }
+        pendingChanges.put(key, value != null ? value : REMOVED);
+        for (PrefKey prefKey : boundKeys) {
+            if (key.equals(prefKey.name)) {
+                resetKey(prefKey);
+            }
+        }
+        scheduleWrite();
+    }
+
+    /**
+     * Put values, written together
+     * @param values Map of String and Object, see put()
+     */
+    public synchronized void putAll(Map<String, Object> values) {
+        for (Map.Entry<String, Object> entry : values.entrySet()) {
+            put(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Remove a value
+     * @param key String
+     */
+    public void remove(String key) {
+        put(key, null);
+    }
+
+    /**
+     * Remove all values
+     */
+    public synchronized void clear() {
+        pendingChanges.clear();
+        pendingClear = true;
+        for (PrefKey prefKey : boundKeys) {
+            resetKey(prefKey);
+        }
+        scheduleWrite();
+    }
+
+    public String getString(String key, String defValue) {
+        Object value = getPendingValue(key);
+        return value == null ? sharedPreferences.getString(key, defValue) : value == REMOVED ? defValue : (String) value;
+    }
+
+    public boolean getBoolean(String key, boolean defValue) {
+        Object value = getPendingValue(key);
+        return value == null ? sharedPreferences.getBoolean(key, defValue) : value == REMOVED ? defValue : (Boolean) value;
+    }
+
+    // ints saved before as longs are still read
+    public int getInt(String key, int defValue) {
+        Object value = getPendingValue(key);
+        if (value == null) {
+            try {
+                return sharedPreferences.getInt(key, defValue);
+            } catch (ClassCastException e) {
+                return (int) sharedPreferences.getLong(key, defValue);
+            }
+        }
+        return value == REMOVED ? defValue : ((Number) value).intValue();
+    }
+
+    public long getLong(String key, long defValue) {
+        Object value = getPendingValue(key);
+        if (value == null) {
+            try {
+                return sharedPreferences.getLong(key, defValue);
+            } catch (ClassCastException e) {
+                return sharedPreferences.getInt(key, (int) defValue);
+            }
+        }
+        return value == REMOVED ? defValue : ((Number) value).longValue();
+    }
+
+    public float getFloat(String key, float defValue) {
+        Object value = getPendingValue(key);
+        return value == null ? sharedPreferences.getFloat(key, defValue) : value == REMOVED ? defValue : (Float) value;
+    }
+
+    /**
+     * Is there a value for a key
+     * @param key String
+     * @return boolean
+     */
+    public boolean contains(String key) {
+        Object value = getPendingValue(key);
+        return value == null ? sharedPreferences.contains(key) : value != REMOVED;
+    }
+
+    /**
+     * Write the pending changes now. They are applied to the SharedPreferences before this method
+     * returns and written to disk in the background, without waiting for a write in progress.
+     */
+    public void flush() {
+        write(false);
+    }
+
+    /**
+     * Has changes not written yet
+     * @return boolean
+     */
+    public synchronized boolean hasPendingChanges() {
+        return !pendingChanges.isEmpty() || pendingClear;
+    }
+
+    /**
+     * Number of editors applied, every one writing the file once
+     * @return int
+     */
+    public synchronized int getWritesCount() {
+        return writesCount;
+    }
+
+    /**
+     * The SharedPreferences written to, without the pending changes
+     * @return SharedPreferences
+     */
+    public SharedPreferences getSharedPreferences() {
+        return sharedPreferences;
+    }
+
+    // bind a key, its value is invalidated when the file is changed by another editor
+    synchronized void bind(PrefKey prefKey) {
+        if (boundKeys.isEmpty()) {
+            sharedPreferences.registerOnSharedPreferenceChangeListener(changeListener);
+        }
+        boundKeys.add(prefKey);
+    }
+
+    // release a key, its pending change keeps the value read now
+    synchronized void unbind(PrefKey prefKey) {
+        if (!boundKeys.remove(prefKey)) {
+            return;
+        }
+        if (pendingChanges.get(prefKey.name) == prefKey) {
+            Object value = prefKey.getValue();
+            pendingChanges.put(prefKey.name, value != null ? value : REMOVED);
+        }
+        prefKey.dirty = false;
+        if (boundKeys.isEmpty()) {
+            sharedPreferences.unregisterOnSharedPreferenceChangeListener(changeListener);
+        }
+    }
+
+    // mark a bound key as changed, called with the lock held
+    void putKey(PrefKey prefKey) {
+        if (!prefKey.dirty) {
+            prefKey.dirty = true;
+            Object previousValue = pendingChanges.put(prefKey.name, prefKey);
+            if (previousValue instanceof PrefKey && previousValue != prefKey) {
+                resetKey((PrefKey) previousValue);
+            }
+            scheduleWrite();
+        }
+    }
+
+    private static void resetKey(PrefKey prefKey) {
+        prefKey.dirty = false;
+        prefKey.loaded = false;
+    }
+
+    // the overlay value of a key, REMOVED, or null to read the SharedPreferences
+    private synchronized Object getPendingValue(String key) {
+        Object value = pendingChanges.get(key);
+        if (value instanceof PrefKey) {
+            value = ((PrefKey) value).getValue();
+            return value != null ? value : REMOVED;
+        }
+        if (value != null) {
+            return value;
+        }
+        return pendingClear ? REMOVED : null;
+    }
+
+    private void scheduleWrite() {
+        if (pendingChanges.size() == batchSize) {
+            // the batch is full, the window task finds nothing left to write
+            writeScheduled = true;
+            getExecutor().execute(writeTask);
+        } else if (!writeScheduled) {
+            writeScheduled = true;
+            getExecutor().schedule(writeTask, windowMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // the changes are applied under the lock, so they reach the SharedPreferences in order.
+    // apply() only updates the memory of the SharedPreferences and queues the disk write.
+    private void write(boolean waitForDisk) {
+        synchronized (this) {
+            writeScheduled = false;
+            if (pendingChanges.isEmpty() && !pendingClear) {
+                return;
+            }
+            SharedPreferences.Editor editor = sharedPreferences.edit();
+            if (pendingClear) {
+                editor.clear();
+            }
+            for (Map.Entry<String, Object> entry : pendingChanges.entrySet()) {
+                String key = entry.getKey();
+                Object value = entry.getValue();
+                if (value instanceof PrefKey) {
+                    // the value of a changed key is read now, later changes mark it again
+                    PrefKey prefKey = (PrefKey) value;
+                    value = prefKey.getValue();
+                    prefKey.dirty = false;
+                }
+                if (value == null || value == REMOVED) {
+                    editor.remove(key);
+                } else if (value instanceof String) {
+                    editor.putString(key, (String) value);
+                } else if (value instanceof Boolean) {
+                    editor.putBoolean(key, (Boolean) value);
+                } else if (value instanceof Integer) {
+                    editor.putInt(key, (Integer) value);
+                } else if (value instanceof Long) {
+                    editor.putLong(key, (Long) value);
+                } else if (value instanceof Float) {
+                    editor.putFloat(key, (Float) value);
+                }
+            }
+            pendingChanges.clear();
+            pendingClear = false;
+            writesCount++;
+            editor.apply();
+        }
+        if (waitForDisk) {
+            // an empty commit returns once the applied changes are on disk, without writing again.
+            // It only holds the worker back, a pending apply() is still awaited by onPause() and onStop()
+            if (!sharedPreferences.edit().commit()) {
+                logThis(TAG, "write: commit failed", null);
+            }
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getExecutor() {
+        if (executor == null) {
+            executor = Executors.newSingleThreadScheduledExecutor(new WorkerThreadFactory(TAG));
+        }
+        return executor;
+    }
+}
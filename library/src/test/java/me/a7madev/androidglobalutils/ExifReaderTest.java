@@ -0,0 +1,221 @@
+package me.a7madev.androidglobalutils;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * ExifReader on sample JPEG headers written by the test: byte orders, segments before the EXIF
+ * segment, missing EXIF, truncated files and non JPEG files
+ */
+public class ExifReaderTest {
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+    private static final int FRAME_WIDTH = 123;
+    private static final int FRAME_HEIGHT = 45;
+    private static final String DATE_TIME = "2024:01:31 12:34:56";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsBigEndianExif() throws IOException {
+        File file = writeJpeg("big.jpg", exifSegment(ByteOrder.BIG_ENDIAN, ExifReader.ORIENTATION_ROTATE_90), true);
+        ExifReader.Metadata metadata = ExifReader.read(file);
+        assertNotNull(metadata);
+        assertEquals(ExifReader.ORIENTATION_ROTATE_90, metadata.orientation);
+        assertEquals(FRAME_WIDTH, metadata.width);
+        assertEquals(FRAME_HEIGHT, metadata.height);
+        assertEquals(20240131123456L, metadata.dateTimeOriginal);
+        assertTrue(metadata.isSwappingSides());
+    }
+
+    @Test
+    public void readsLittleEndianExif() throws IOException {
+        File file = writeJpeg("little.jpg", exifSegment(ByteOrder.LITTLE_ENDIAN, ExifReader.ORIENTATION_ROTATE_270), true);
+        ExifReader.Metadata metadata = ExifReader.read(file);
+        assertNotNull(metadata);
+        assertEquals(ExifReader.ORIENTATION_ROTATE_270, metadata.orientation);
+        assertEquals(FRAME_WIDTH, metadata.width);
+        assertEquals(FRAME_HEIGHT, metadata.height);
+        assertEquals(ExifReader.ORIENTATION_ROTATE_270, ExifReader.readOrientation(file.getPath()));
+    }
+
+    @Test
+    public void readsFrameSizeWithoutExif() throws IOException {
+        File file = writeJpeg("plain.jpg", null, true);
+        ExifReader.Metadata metadata = ExifReader.read(file);
+        assertNotNull(metadata);
+        assertEquals(ExifReader.ORIENTATION_UNDEFINED, metadata.orientation);
+        assertEquals(FRAME_WIDTH, metadata.width);
+        assertEquals(FRAME_HEIGHT, metadata.height);
+        assertEquals(0, metadata.dateTimeOriginal);
+        assertEquals(ExifReader.ORIENTATION_NORMAL, ExifReader.readOrientation(file.getPath()));
+    }
+
+    @Test
+    public void ignoresExifSizeWithoutFrameHeader() throws IOException {
+        // the EXIF sizes (4000x3000) are not the frame size and must not be reported as such
+        File file = writeJpeg("noframe.jpg", exifSegment(ByteOrder.BIG_ENDIAN, ExifReader.ORIENTATION_NORMAL), false);
+        ExifReader.Metadata metadata = ExifReader.read(file);
+        assertNotNull(metadata);
+        assertEquals(ExifReader.ORIENTATION_NORMAL, metadata.orientation);
+        assertEquals(0, metadata.width);
+        assertEquals(0, metadata.height);
+    }
+
+    @Test
+    public void rejectsNonJpegFiles() throws IOException {
+        File textFile = write("notes.txt", "hello world".getBytes(ASCII));
+        assertNull(ExifReader.read(textFile));
+        assertNull(ExifReader.read(new File(folder.getRoot(), "missing.jpg")));
+        assertNull(ExifReader.read(folder.getRoot()));
+        assertEquals(ExifReader.ORIENTATION_NORMAL, ExifReader.readOrientation(textFile.getPath()));
+        assertEquals(ExifReader.ORIENTATION_NORMAL, ExifReader.readOrientation(null));
+    }
+
+    @Test
+    public void toleratesTruncatedFiles() throws IOException {
+        byte[] jpeg = jpeg(exifSegment(ByteOrder.LITTLE_ENDIAN, ExifReader.ORIENTATION_ROTATE_180), true);
+        for (int length = 0; length <= jpeg.length; length++) {
+            File file = write("truncated.jpg", Arrays.copyOf(jpeg, length));
+            ExifReader.Metadata metadata = new ExifReader.Metadata();
+            if (ExifReader.read(file, metadata)) {
+                assertTrue(metadata.width == 0 || metadata.width == FRAME_WIDTH);
+                assertTrue(metadata.height == 0 || metadata.height == FRAME_HEIGHT);
+            } else {
+                assertEquals(0, metadata.width);
+                assertEquals(ExifReader.ORIENTATION_UNDEFINED, metadata.orientation);
+            }
+        }
+    }
+
+    @Test
+    public void readsCaptureTimeInLocalTime() throws IOException {
+        File file = writeJpeg("date.jpg", exifSegment(ByteOrder.BIG_ENDIAN, ExifReader.ORIENTATION_NORMAL), true);
+        ExifReader.Metadata metadata = ExifReader.read(file);
+        assertNotNull(metadata);
+        Calendar calendar = Calendar.getInstance();
+        calendar.clear();
+        calendar.set(2024, Calendar.JANUARY, 31, 12, 34, 56);
+        assertEquals(calendar.getTimeInMillis(), metadata.getDateTimeOriginalMillis());
+    }
+
+    @Test
+    public void readsBatchInOrder() throws IOException {
+        File rotated = writeJpeg("rotated.jpg", exifSegment(ByteOrder.BIG_ENDIAN, ExifReader.ORIENTATION_ROTATE_90), true);
+        File plain = writeJpeg("plain.jpg", null, true);
+        File textFile = write("notes.txt", "hello world".getBytes(ASCII));
+        List<File> files = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            files.add(new File(folder.getRoot(), i % 3 == 0 ? rotated.getName() : i % 3 == 1 ? plain.getName() : textFile.getName()));
+        }
+        Map<File, ExifReader.Metadata> results = ExifReader.read(files);
+        // equal files collapse into one key
+        assertEquals(2, results.size());
+        List<File> keys = new ArrayList<>(results.keySet());
+        assertEquals(rotated, keys.get(0));
+        assertEquals(plain, keys.get(1));
+        assertEquals(ExifReader.ORIENTATION_ROTATE_90, results.get(rotated).orientation);
+        assertEquals(ExifReader.ORIENTATION_UNDEFINED, results.get(plain).orientation);
+        assertFalse(results.containsKey(textFile));
+    }
+
+    private File writeJpeg(String name, byte[] exifSegment, boolean withFrameHeader) throws IOException {
+        return write(name, jpeg(exifSegment, withFrameHeader));
+    }
+
+    private File write(String name, byte[] bytes) throws IOException {
+        File file = new File(folder.getRoot(), name);
+        FileOutputStream outputStream = new FileOutputStream(file);
+        try {
+            outputStream.write(bytes);
+        } finally {
+            outputStream.close();
+        }
+        return file;
+    }
+
+    // SOI, an XMP APP1 segment, fill bytes, the EXIF segment, the frame header, scan data and EOI
+    private static byte[] jpeg(byte[] exifSegment, boolean withFrameHeader) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        outputStream.write(new byte[]{(byte) 0xFF, (byte) 0xD8});
+        writeSegment(outputStream, 0xE1, "http://ns.adobe.com/xap/1.0/\0<x:xmpmeta/>".getBytes(ASCII));
+        outputStream.write(new byte[]{(byte) 0xFF, (byte) 0xFF});
+        if (exifSegment != null) {
+            writeSegment(outputStream, 0xE1, exifSegment);
+        }
+        writeSegment(outputStream, 0xDB, new byte[65]);
+        if (withFrameHeader) {
+            writeSegment(outputStream, 0xC0, new byte[]{8, 0, (byte) FRAME_HEIGHT, 0, (byte) FRAME_WIDTH, 1, 1, 0x11, 0});
+        }
+        writeSegment(outputStream, 0xDA, new byte[]{1, 1, 0, 0, 63, 0});
+        outputStream.write(new byte[]{0x12, 0x34, 0x56});
+        outputStream.write(new byte[]{(byte) 0xFF, (byte) 0xD9});
+        return outputStream.toByteArray();
+    }
+
+    private static void writeSegment(ByteArrayOutputStream outputStream, int marker, byte[] payload) {
+        int length = payload.length + 2;
+        outputStream.write(0xFF);
+        outputStream.write(marker);
+        outputStream.write(length >> 8);
+        outputStream.write(length & 0xFF);
+        outputStream.write(payload, 0, payload.length);
+    }
+
+    // "Exif\0\0" and a TIFF header: IFD0 with the orientation, sizes and the Exif IFD offset,
+    // the Exif IFD with the capture time and pixel sizes
+    private static byte[] exifSegment(ByteOrder byteOrder, int orientation) {
+        ByteBuffer buffer = ByteBuffer.allocate(256).order(byteOrder);
+        buffer.put("Exif\0\0".getBytes(ASCII));
+        int tiffStart = buffer.position();
+        byte orderMark = (byte) (byteOrder == ByteOrder.LITTLE_ENDIAN ? 'I' : 'M');
+        buffer.put(orderMark).put(orderMark).putShort((short) 42).putInt(8);
+
+        int exifIfdOffset = 8 + 2 + 4 * 12 + 4;
+        buffer.putShort((short) 4);
+        putShortEntry(buffer, 0x0100, 4000);
+        putShortEntry(buffer, 0x0101, 3000);
+        putShortEntry(buffer, 0x0112, orientation);
+        putLongEntry(buffer, 0x8769, 4, exifIfdOffset);
+        buffer.putInt(0);
+
+        int dateTimeOffset = exifIfdOffset + 2 + 3 * 12 + 4;
+        buffer.putShort((short) 3);
+        putLongEntry(buffer, 0x9003, 2, dateTimeOffset);
+        putLongEntry(buffer, 0xA002, 4, 4000);
+        putShortEntry(buffer, 0xA003, 3000);
+        buffer.putInt(0);
+        assertEquals(tiffStart + dateTimeOffset, buffer.position());
+        buffer.put((DATE_TIME + "\0").getBytes(ASCII));
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    private static void putShortEntry(ByteBuffer buffer, int tag, int value) {
+        buffer.putShort((short) tag).putShort((short) 3).putInt(1).putShort((short) value).putShort((short) 0);
+    }
+
+    private static void putLongEntry(ByteBuffer buffer, int tag, int type, int value) {
+        buffer.putShort((short) tag).putShort((short) type).putInt(type == 2 ? DATE_TIME.length() + 1 : 1).putInt(value);
+    }
+}
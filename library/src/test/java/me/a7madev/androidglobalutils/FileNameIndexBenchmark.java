@@ -0,0 +1,49 @@
+package me.a7madev.androidglobalutils;
+
+import java.util.Arrays;
+
+/**
+ * Query times of FileNameIndex on 100k names. Not a unit test, wall clock times depend on the
+ * machine: run main() by hand and compare the printed medians between changes.
+ */
+public class FileNameIndexBenchmark {
+
+    private static final int NAMES_COUNT = 100000;
+    private static final int MAX_LISTED_RESULTS = 100;
+
+    public static void main(String[] args) {
+        FileNameIndex index = new FileNameIndex();
+        for (String path : FileNameIndexTest.createPaths(NAMES_COUNT)) {
+            index.add(path);
+        }
+        // warm up, a search as you type list shows the first results, all matches of a broad query take a few ms
+        for (int i = 0; i < 20; i++) {
+            for (String query : FileNameIndexTest.QUERIES) {
+                index.search(query, Integer.MAX_VALUE);
+                index.searchPrefix(query, Integer.MAX_VALUE);
+            }
+        }
+        for (String query : FileNameIndexTest.QUERIES) {
+            System.out.println("\"" + query + "\": " + index.search(query, Integer.MAX_VALUE).size() + " matches, first "
+                    + MAX_LISTED_RESULTS + " in " + medianMicros(index, query, false, MAX_LISTED_RESULTS) + " us, all in "
+                    + medianMicros(index, query, false, Integer.MAX_VALUE) + " us, prefix in "
+                    + medianMicros(index, query, true, MAX_LISTED_RESULTS) + " us");
+        }
+    }
+
+    // median of repeated queries, robust to a garbage collection
+    private static long medianMicros(FileNameIndex index, String query, boolean prefix, int maxResults) {
+        long[] nanos = new long[51];
+        for (int i = 0; i < nanos.length; i++) {
+            long start = System.nanoTime();
+            if (prefix) {
+                index.searchPrefix(query, maxResults);
+            } else {
+                index.search(query, maxResults);
+            }
+            nanos[i] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        return nanos[nanos.length / 2] / 1000;
+    }
+}
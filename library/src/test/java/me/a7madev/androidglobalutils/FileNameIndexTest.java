@@ -0,0 +1,109 @@
+package me.a7madev.androidglobalutils;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * FileNameIndex results against a linear scan on 100k names, query times are measured by
+ * FileNameIndexBenchmark
+ */
+public class FileNameIndexTest {
+
+    private static final int NAMES_COUNT = 100000;
+    private static final String[] WORDS = {"img", "vid", "photo", "screenshot", "holiday", "beach", "report",
+            "invoice", "draft", "final", "backup", "camera", "dcim", "whatsapp", "note", "scan"};
+    private static final String[] EXTENSIONS = {".jpg", ".png", ".mp4", ".pdf", ".txt", ".docx"};
+    static final String[] QUERIES = {"photo", "Beach_2", "VID", "final.pdf", "_1", "sc", "p", "2019",
+            "camera_", "zzz", "note_99", "ip", ".MP4", "backup_final"};
+
+    private static final List<String> paths = new ArrayList<>();
+    private static final FileNameIndex index = new FileNameIndex();
+
+    @BeforeClass
+    public static void setUp() {
+        paths.addAll(createPaths(NAMES_COUNT));
+        for (String path : paths) {
+            index.add(path);
+        }
+    }
+
+    @Test
+    public void searchMatchesLinearScan() {
+        for (String query : QUERIES) {
+            assertEquals(query, scan(paths, query, false), index.search(query, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void searchPrefixMatchesLinearScan() {
+        for (String query : QUERIES) {
+            assertEquals(query, scan(paths, query, true), index.searchPrefix(query, Integer.MAX_VALUE));
+        }
+    }
+
+    @Test
+    public void searchLimitsResults() {
+        List<String> results = index.search("img", 10);
+        assertEquals(scan(paths, "img", false).subList(0, 10), results);
+        assertTrue(index.search("", 10).isEmpty());
+        assertTrue(index.search("img", 0).isEmpty());
+    }
+
+    @Test
+    public void addAndRemoveAreIncremental() {
+        FileNameIndex smallIndex = new FileNameIndex();
+        List<String> smallPaths = new ArrayList<>(paths.subList(0, 5000));
+        for (String path : smallPaths) {
+            smallIndex.add(path);
+        }
+        // removing more than half of the files compacts the index
+        for (int i = 0; i < 3000; i++) {
+            assertTrue(smallIndex.remove(smallPaths.remove(smallPaths.size() - 1)));
+        }
+        assertFalse(smallIndex.remove("/not/indexed.jpg"));
+        smallIndex.add("/new/Sunset_Pier.JPG");
+        smallPaths.add("/new/Sunset_Pier.JPG");
+        assertEquals(smallPaths.size(), smallIndex.size());
+        for (String query : QUERIES) {
+            assertEquals(query, scan(smallPaths, query, false), smallIndex.search(query, Integer.MAX_VALUE));
+            assertEquals(query, scan(smallPaths, query, true), smallIndex.searchPrefix(query, Integer.MAX_VALUE));
+        }
+        assertEquals(Arrays.asList("/new/Sunset_Pier.JPG"), smallIndex.search("set_pi", 10));
+    }
+
+    // file names made of random words, numbers and extensions, the same for every run
+    static List<String> createPaths(int count) {
+        Random random = new Random(7);
+        List<String> paths = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String word = WORDS[random.nextInt(WORDS.length)];
+            String name = (random.nextBoolean() ? word.toUpperCase(Locale.US) : word) + "_"
+                    + WORDS[random.nextInt(WORDS.length)] + "_" + (2000 + random.nextInt(25)) + random.nextInt(1000)
+                    + EXTENSIONS[random.nextInt(EXTENSIONS.length)];
+            paths.add("/storage/emulated/0/" + WORDS[random.nextInt(WORDS.length)] + "/" + i + "/" + name);
+        }
+        return paths;
+    }
+
+    private static List<String> scan(List<String> paths, String query, boolean prefix) {
+        String lowerQuery = query.toLowerCase(Locale.US);
+        List<String> results = new ArrayList<>();
+        for (String path : paths) {
+            String name = path.substring(path.lastIndexOf('/') + 1).toLowerCase(Locale.US);
+            if (prefix ? name.startsWith(lowerQuery) : name.contains(lowerQuery)) {
+                results.add(path);
+            }
+        }
+        return results;
+    }
+}
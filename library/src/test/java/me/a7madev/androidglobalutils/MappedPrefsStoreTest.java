@@ -0,0 +1,382 @@
+package me.a7madev.androidglobalutils;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * MappedPrefsStore against an in memory model: random operations with reopening and compaction,
+ * torn and corrupt records, interrupted clears, file lengths that are not a multiple of the mapped size, and writes
+ * made while a compaction runs on another thread
+ */
+public class MappedPrefsStoreTest {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+    private static final byte TYPE_LONG = 4;
+
+    // runs the compactions on the writing thread
+    private static final Executor DIRECT_EXECUTOR = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    private final List<MappedPrefsStore> stores = new ArrayList<>();
+
+    @After
+    public void tearDown() {
+        for (MappedPrefsStore store : stores) {
+            store.close();
+        }
+    }
+
+    @Test
+    public void randomOperationsMatchModel() throws IOException {
+        File file = folder.newFile("random.kv");
+        Random random = new Random(42);
+        Map<String, Object> model = new HashMap<>();
+        MappedPrefsStore store = open(file, DIRECT_EXECUTOR);
+        int compactionsCount = 0;
+        for (int i = 0; i < 20000; i++) {
+            String key = "key" + random.nextInt(200);
+            int operation = random.nextInt(1000);
+            int logSize = store.getLogSize();
+            if (operation < 700) {
+                Object value = randomValue(random);
+                assertTrue(store.put(key, value));
+                model.put(key, value);
+            } else if (operation < 980) {
+                assertTrue(store.remove(key));
+                model.remove(key);
+            } else if (operation < 981) {
+                store.clear();
+                model.clear();
+            } else {
+                store.close();
+                store = open(file, DIRECT_EXECUTOR);
+                assertEquals(logSize, store.getLogSize());
+            }
+            if (operation < 980 && store.getLogSize() < logSize) {
+                compactionsCount++;
+            }
+        }
+        assertEquals(model, store.getAll());
+        store.close();
+        assertEquals(model, open(file, DIRECT_EXECUTOR).getAll());
+        assertTrue("no compaction ran", compactionsCount > 0);
+    }
+
+    @Test
+    public void readsEveryType() throws IOException {
+        File file = folder.newFile("types.kv");
+        MappedPrefsStore store = open(file, null);
+        store.put("string", "café ☕");
+        store.put("empty", "");
+        store.put("boolean", true);
+        store.put("int", -7);
+        store.put("long", Long.MIN_VALUE);
+        store.put("float", 1.5f);
+        store.close();
+
+        store = open(file, null);
+        assertEquals("café ☕", store.getString("string", null));
+        assertEquals("", store.getString("empty", null));
+        assertTrue(store.getBoolean("boolean", false));
+        assertEquals(-7, store.getInt("int", 0));
+        assertEquals(Long.MIN_VALUE, store.getLong("long", 0));
+        assertEquals(1.5f, store.getFloat("float", 0), 0);
+        assertFalse(store.contains("missing"));
+        assertEquals(6, store.size());
+    }
+
+    @Test
+    public void tornRecordIsDropped() throws IOException {
+        File file = folder.newFile("torn.kv");
+        MappedPrefsStore store = open(file, null);
+        store.put("kept", "value");
+        int lastRecordPosition = store.getLogSize();
+        store.put("torn", "lost in a crash");
+        store.close();
+
+        // a crash between the body and the length: the body is there, the length is not
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(lastRecordPosition + 4);
+            randomAccessFile.writeInt(0);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        store = open(file, null);
+        assertEquals("value", store.getString("kept", null));
+        assertFalse(store.contains("torn"));
+        // the tail is dropped, so the next record is read back
+        store.put("after", 1);
+        store.close();
+        store = open(file, null);
+        assertEquals("value", store.getString("kept", null));
+        assertEquals(1, store.getInt("after", 0));
+        assertFalse(store.contains("torn"));
+    }
+
+    @Test
+    public void corruptRecordEndsTheLog() throws IOException {
+        File file = folder.newFile("corrupt.kv");
+        MappedPrefsStore store = open(file, null);
+        store.put("kept", 1L);
+        int position = store.getLogSize();
+        store.close();
+
+        // a record with a valid checksum but a long value of 2 bytes
+        byte[] key = "short".getBytes(UTF_8);
+        byte[] body = new byte[3 + key.length + 2];
+        body[0] = TYPE_LONG;
+        body[2] = (byte) key.length;
+        System.arraycopy(key, 0, body, 3, key.length);
+        CRC32 crc32 = new CRC32();
+        crc32.update(body, 0, body.length);
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(position);
+            randomAccessFile.writeInt((int) crc32.getValue());
+            randomAccessFile.writeInt(body.length);
+            randomAccessFile.write(body);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        store = open(file, null);
+        assertEquals(1L, store.getLong("kept", 0));
+        assertFalse(store.contains("short"));
+        assertEquals(position, store.getLogSize());
+    }
+
+    @Test
+    public void interruptedClearKeepsKeysCleared() throws IOException {
+        File file = folder.newFile("cleared.kv");
+        MappedPrefsStore store = open(file, null);
+        store.put("aa", 1);
+        int firstRecordEnd = store.getLogSize();
+        store.put("bb", 2);
+        store.put("secret", "old");
+        store.close();
+
+        // a crash while zeroing the log: only the first record is gone
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.seek(8);
+            randomAccessFile.write(new byte[firstRecordEnd - 8]);
+        } finally {
+            randomAccessFile.close();
+        }
+
+        store = open(file, null);
+        assertEquals(0, store.size());
+        store.put("xx", 9);
+        store.close();
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("xx", 9);
+        assertEquals(expected, open(file, null).getAll());
+    }
+
+    @Test
+    public void clearTruncatesTheLog() throws IOException {
+        File file = folder.newFile("clear.kv");
+        MappedPrefsStore store = open(file, null);
+        for (int i = 0; i < 1000; i++) {
+            store.put("key" + i, "value" + i);
+        }
+        store.clear();
+        assertEquals(0, store.size());
+        assertEquals(8, store.getLogSize());
+        assertTrue(file.length() < 1000 * 8);
+        store.put("after", true);
+        store.close();
+        Map<String, Object> expected = new HashMap<>();
+        expected.put("after", true);
+        assertEquals(expected, open(file, null).getAll());
+    }
+
+    @Test
+    public void opensAnyFileLength() throws IOException {
+        File file = folder.newFile("length.kv");
+        MappedPrefsStore store = open(file, null);
+        Map<String, Object> model = new HashMap<>();
+        for (int i = 0; store.getLogSize() < 6000; i++) {
+            store.put("key" + i, "value" + i);
+            model.put("key" + i, "value" + i);
+        }
+        int logSize = store.getLogSize();
+        int lastRecordSize = ("key" + (model.size() - 1)).length() + ("value" + (model.size() - 1)).length() + 3 + 8;
+        store.close();
+        byte[] log = readFile(file, logSize);
+
+        // cut inside the last record, at its end, and a few bytes of zeros after it
+        for (int length = logSize - lastRecordSize; length <= logSize + 12; length++) {
+            File copy = new File(folder.getRoot(), "copy" + length + ".kv");
+            writeFile(copy, log, Math.min(length, logSize));
+            RandomAccessFile randomAccessFile = new RandomAccessFile(copy, "rw");
+            try {
+                randomAccessFile.setLength(length);
+            } finally {
+                randomAccessFile.close();
+            }
+            MappedPrefsStore copyStore = open(copy, null);
+            assertNotNull("length " + length, copyStore);
+            Map<String, Object> values = copyStore.getAll();
+            Map<String, Object> expected = new HashMap<>(model);
+            if (length < logSize) {
+                expected.remove("key" + (model.size() - 1));
+            }
+            assertEquals("length " + length, expected, values);
+            copyStore.close();
+        }
+    }
+
+    @Test
+    public void resetsForeignFiles() throws IOException {
+        File file = folder.newFile("foreign.kv");
+        byte[] text = "not a store file".getBytes(UTF_8);
+        writeFile(file, text, text.length);
+        MappedPrefsStore store = open(file, null);
+        assertEquals(0, store.size());
+        store.put("key", "value");
+        store.close();
+        assertEquals("value", open(file, null).getString("key", null));
+    }
+
+    @Test
+    public void keepsWritesMadeDuringCompaction() throws Exception {
+        File file = folder.newFile("concurrent.kv");
+        ExecutorService compactionExecutor = Executors.newSingleThreadExecutor();
+        final MappedPrefsStore store = open(file, compactionExecutor);
+        final int writersCount = 4;
+        final List<Map<String, Object>> models = new ArrayList<>();
+        for (int i = 0; i < writersCount; i++) {
+            models.add(new HashMap<String, Object>());
+        }
+        final CountDownLatch done = new CountDownLatch(writersCount);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        for (int i = 0; i < writersCount; i++) {
+            final int writer = i;
+            new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Random random = new Random(writer);
+                        Map<String, Object> model = models.get(writer);
+                        for (int j = 0; j < 20000; j++) {
+                            // every writer has its own keys
+                            String key = "writer" + writer + "_" + random.nextInt(100);
+                            if (random.nextInt(10) == 0) {
+                                store.remove(key);
+                                model.remove(key);
+                            } else {
+                                Object value = randomValue(random);
+                                store.put(key, value);
+                                model.put(key, value);
+                            }
+                        }
+                    } catch (Throwable e) {
+                        failure.set(e);
+                    } finally {
+                        done.countDown();
+                    }
+                }
+            }).start();
+        }
+        // compactions are also started by hand while the writers run
+        while (!done.await(1, TimeUnit.MILLISECONDS)) {
+            store.compact();
+        }
+        compactionExecutor.shutdown();
+        assertTrue(compactionExecutor.awaitTermination(30, TimeUnit.SECONDS));
+        assertNull(failure.get());
+
+        Map<String, Object> model = new HashMap<>();
+        for (Map<String, Object> writerModel : models) {
+            model.putAll(writerModel);
+        }
+        assertEquals(model, store.getAll());
+        assertFalse(new File(file.getPath() + ".compact").exists());
+        store.close();
+        assertEquals(model, open(file, null).getAll());
+    }
+
+    private MappedPrefsStore open(File file, Executor compactionExecutor) {
+        MappedPrefsStore store = MappedPrefsStore.open(file, compactionExecutor, null);
+        if (store != null) {
+            stores.add(store);
+        }
+        return store;
+    }
+
+    private static Object randomValue(Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                StringBuilder builder = new StringBuilder();
+                int length = random.nextInt(64);
+                for (int i = 0; i < length; i++) {
+                    builder.append((char) ('a' + random.nextInt(26)));
+                }
+                return builder.toString();
+            case 1:
+                return random.nextBoolean();
+            case 2:
+                return random.nextInt();
+            case 3:
+                return random.nextLong();
+            default:
+                return random.nextFloat();
+        }
+    }
+
+    private static byte[] readFile(File file, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+        try {
+            randomAccessFile.readFully(bytes);
+        } finally {
+            randomAccessFile.close();
+        }
+        return bytes;
+    }
+
+    private static void writeFile(File file, byte[] bytes, int length) throws IOException {
+        RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw");
+        try {
+            randomAccessFile.setLength(0);
+            randomAccessFile.write(bytes, 0, length);
+        } finally {
+            randomAccessFile.close();
+        }
+    }
+}